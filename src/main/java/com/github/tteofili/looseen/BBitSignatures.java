@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.tteofili.looseen;
+
+/**
+ * b-bit minwise hashing: only the lowest b bits of each signature value are kept, packed in 64 bits words, which
+ * shrinks signatures by a factor of {@code 64 / b}.
+ * Two truncated values also agree by chance with probability about {@code C = 2^-b}, so the Jaccard similarity is
+ * estimated from the fraction {@code P} of agreeing values as {@code (P - C) / (1 - C)}.
+ */
+public final class BBitSignatures {
+
+    private static final long[] LOW_BITS = new long[7]; // the lowest bit of each b bits value of a word, per log2(b)
+
+    static {
+        for (int log = 0; log < LOW_BITS.length; log++) {
+            for (int i = 0; i < Long.SIZE; i += 1 << log) {
+                LOW_BITS[log] |= 1L << i;
+            }
+        }
+    }
+
+    private BBitSignatures() {
+    }
+
+    /**
+     * @throws IllegalArgumentException if the given no. of bits is not a power of 2 between 1 and 64
+     */
+    public static void checkBits(int bits) {
+        if (bits <= 0 || bits > Long.SIZE || Integer.bitCount(bits) != 1) {
+            throw new IllegalArgumentException("bits must be a power of 2 between 1 and 64, got " + bits);
+        }
+    }
+
+    /**
+     * @return the no. of words holding a packed signature of the given length
+     */
+    public static int words(int length, int bits) {
+        return (int) (((long) length * bits + Long.SIZE - 1) / Long.SIZE);
+    }
+
+    /**
+     * packs the lowest bits of each value of the given signature, {@code 64 / bits} values per word
+     */
+    public static long[] pack(long[] signature, int bits) {
+        long[] packed = new long[words(signature.length, bits)];
+        pack(signature, bits, packed, 0);
+        return packed;
+    }
+
+    /**
+     * packs the lowest bits of each value of the given signature into the given words, starting at the given offset
+     */
+    public static void pack(long[] signature, int bits, long[] words, int offset) {
+        if (bits == Long.SIZE) {
+            System.arraycopy(signature, 0, words, offset, signature.length);
+            return;
+        }
+        long mask = (1L << bits) - 1;
+        for (int i = 0; i < signature.length; i++) {
+            long position = (long) i * bits;
+            words[offset + (int) (position >>> 6)] |= (signature[i] & mask) << (position & 63);
+        }
+    }
+
+    /**
+     * @return the no. of values two packed signatures of the given length agree on
+     */
+    public static int agreement(long[] a, int aOffset, long[] b, int bOffset, int length, int bits) {
+        int differing = 0;
+        if (bits == Long.SIZE) {
+            for (int i = 0; i < length; i++) {
+                if (a[aOffset + i] != b[bOffset + i]) {
+                    differing++;
+                }
+            }
+            return length - differing;
+        }
+        long lowBits = LOW_BITS[Integer.numberOfTrailingZeros(bits)];
+        for (int i = 0, words = words(length, bits); i < words; i++) {
+            // fold each b bits value onto its lowest bit, which is then set iff the two values differ
+            long x = a[aOffset + i] ^ b[bOffset + i];
+            for (int shift = 1; shift < bits; shift <<= 1) {
+                x |= x >>> shift;
+            }
+            differing += Long.bitCount(x & lowBits);
+        }
+        // padding bits are zero in both signatures, so they never differ
+        return length - differing;
+    }
+
+    /**
+     * @return the Jaccard similarity estimated from the no. of values two signatures of the given length agree on,
+     * corrected for the random collisions of b bits values
+     */
+    public static float similarity(int agreement, int length, int bits) {
+        double p = agreement / (double) length;
+        double c = Math.scalb(1d, -bits);
+        return (float) Math.max(0d, (p - c) / (1d - c));
+    }
+}
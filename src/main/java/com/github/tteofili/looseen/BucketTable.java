@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.tteofili.looseen;
+
+import java.util.Arrays;
+
+import org.apache.lucene.util.ArrayUtil;
+
+/**
+ * a primitive open addressing hash table from 64 bits keys to the chains of ids added under each key, used as one of
+ * the tables of {@link MinHashLSHIndex} and {@link SimHashIndex}.
+ * Ids are expected to be small, as chains are linked through an array indexed by id.
+ * Adding ids is not thread safe, looking them up is.
+ */
+final class BucketTable {
+
+    private long[] keys = new long[16];
+    private int[] heads = new int[16];
+    private int[] next = new int[16];
+    private int size;
+
+    BucketTable() {
+        Arrays.fill(heads, -1);
+    }
+
+    /**
+     * adds the given id to the chain of the given key
+     */
+    void add(long key, int id) {
+        if (2 * (size + 1) > heads.length) {
+            rehash(2 * heads.length);
+        }
+        int slot = slot(key);
+        if (heads[slot] == -1) {
+            keys[slot] = key;
+            size++;
+        }
+        next = ArrayUtil.grow(next, id + 1);
+        next[id] = heads[slot];
+        heads[slot] = id;
+    }
+
+    /**
+     * @return the last id added under the given key, or -1 if there is none
+     */
+    int head(long key) {
+        return heads[slot(key)];
+    }
+
+    /**
+     * @return the id added under the same key before the given one, or -1 if there is none
+     */
+    int next(int id) {
+        return next[id];
+    }
+
+    /**
+     * @return the slot holding the given key, or the empty slot where it should be inserted
+     */
+    private int slot(long key) {
+        int mask = heads.length - 1;
+        int slot = (int) key & mask;
+        while (heads[slot] != -1 && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldHeads = heads;
+        keys = new long[capacity];
+        heads = new int[capacity];
+        Arrays.fill(heads, -1);
+        for (int i = 0; i < oldHeads.length; i++) {
+            if (oldHeads[i] != -1) {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                heads[slot] = oldHeads[i];
+            }
+        }
+    }
+}
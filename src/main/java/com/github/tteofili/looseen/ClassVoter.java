@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.tteofili.looseen;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.lucene.classification.ClassificationResult;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefHash;
+
+/**
+ * k nearest neighbours voting over the classes of the top hits of a sidecar index.
+ * Class labels are read from sorted doc values (or registered upfront by in memory indexes) and votes are accumulated
+ * in primitive arrays indexed by class ordinals, labels are only looked up for the returned
+ * {@link ClassificationResult}s.
+ */
+public final class ClassVoter {
+
+    private final String classField;
+    private final BytesRefHash classes = new BytesRefHash();
+    private final Map<IndexReader.CacheKey, int[]> segmentOrdinals = new ConcurrentHashMap<>();
+
+    public ClassVoter(String classField) {
+        this.classField = classField;
+    }
+
+    /**
+     * votes the classes of the given hits, reading each hit's class from the sorted doc values of the given reader
+     *
+     * @param reader the reader the hits come from
+     * @param hits   the top hits
+     * @param k      the no. of neighbours that were requested
+     * @return the classes sorted by descending score
+     */
+    public List<ClassificationResult<BytesRef>> vote(IndexReader reader, ScoreDoc[] hits, int k) throws IOException {
+        return vote(hits, classes(reader, hits), k);
+    }
+
+    /**
+     * reads the class of each of the given hits from the sorted doc values of the given reader
+     *
+     * @param reader the reader the hits come from
+     * @param hits   the hits
+     * @return the class ordinal of each hit, in the given order, or -1 for hits having no class
+     */
+    public int[] classes(IndexReader reader, ScoreDoc[] hits) throws IOException {
+        // doc values have to be visited in doc id order, hits are sorted by doc id along with their position
+        long[] sorted = new long[hits.length];
+        for (int i = 0; i < hits.length; i++) {
+            sorted[i] = (long) hits[i].doc << 32 | i;
+        }
+        Arrays.sort(sorted);
+        int[] hitClasses = new int[hits.length];
+        List<LeafReaderContext> leaves = reader.leaves();
+        LeafReaderContext leaf = null;
+        SortedDocValues values = null;
+        int[] ordinals = null;
+        for (long docAndIndex : sorted) {
+            int doc = (int) (docAndIndex >>> 32);
+            int i = (int) docAndIndex;
+            if (leaf == null || doc >= leaf.docBase + leaf.reader().maxDoc()) {
+                leaf = leaves.get(ReaderUtil.subIndex(doc, leaves));
+                values = DocValues.getSorted(leaf.reader(), classField);
+                ordinals = ordinals(leaf.reader(), values);
+            }
+            if (values.advanceExact(doc - leaf.docBase)) {
+                hitClasses[i] = ordinals[values.ordValue()];
+            } else {
+                hitClasses[i] = -1;
+            }
+        }
+        return hitClasses;
+    }
+
+    /**
+     * votes the given classes, each hit votes for its class with its score normalized by the max score
+     *
+     * @param hits       the top hits
+     * @param hitClasses the class ordinal of each hit, or -1 for hits having no class
+     * @param k          the no. of neighbours that were requested
+     * @return the classes sorted by descending score
+     */
+    public List<ClassificationResult<BytesRef>> vote(ScoreDoc[] hits, int[] hitClasses, int k) {
+        float maxScore = 0;
+        int maxClass = -1;
+        for (int i = 0; i < hits.length; i++) {
+            maxScore = Math.max(maxScore, hits[i].score);
+            maxClass = Math.max(maxClass, hitClasses[i]);
+        }
+
+        int[] classCounts = new int[maxClass + 1];
+        double[] classBoosts = new double[maxClass + 1]; // this is a boost based on class ranking positions in hits
+        int sumdoc = 0;
+        for (int i = 0; i < hits.length; i++) {
+            int c = hitClasses[i];
+            if (c >= 0) {
+                classCounts[c]++;
+                //update boost, the boost is based on the best score
+                classBoosts[c] += maxScore > 0 ? hits[i].score / maxScore : 1;
+                sumdoc++;
+            }
+        }
+
+        //correction
+        double correction = sumdoc < k ? k / (double) sumdoc : 1;
+        List<ClassificationResult<BytesRef>> returnList = new ArrayList<>();
+        for (int c = 0; c <= maxClass; c++) {
+            int count = classCounts[c];
+            if (count > 0) {
+                double normBoost = classBoosts[c] / count; //the boost is normalized to be 0<b<1
+                returnList.add(new ClassificationResult<>(label(c), correction * (count * normBoost) / (double) k));
+            }
+        }
+        returnList.sort((a, b) -> Double.compare(b.getScore(), a.getScore()));
+        return returnList;
+    }
+
+    /**
+     * @return the global ordinal of the given class label, for classes that are not read from doc values
+     */
+    public int ordinal(BytesRef label) {
+        synchronized (classes) {
+            int id = classes.add(label);
+            return id < 0 ? -id - 1 : id;
+        }
+    }
+
+    /**
+     * maps the ordinals of the given segment's class doc values to global class ordinals, mappings are cached per
+     * segment core, as ordinals don't change when docs get deleted
+     */
+    private int[] ordinals(LeafReader leaf, SortedDocValues values) throws IOException {
+        IndexReader.CacheHelper cacheHelper = leaf.getCoreCacheHelper();
+        int[] ordinals = cacheHelper != null ? segmentOrdinals.get(cacheHelper.getKey()) : null;
+        if (ordinals == null) {
+            ordinals = new int[values.getValueCount()];
+            for (int ord = 0; ord < ordinals.length; ord++) {
+                ordinals[ord] = ordinal(values.lookupOrd(ord));
+            }
+            if (cacheHelper != null && segmentOrdinals.putIfAbsent(cacheHelper.getKey(), ordinals) == null) {
+                cacheHelper.addClosedListener(segmentOrdinals::remove);
+            }
+        }
+        return ordinals;
+    }
+
+    /**
+     * @return the no. of segment cores whose class ordinals mappings are cached
+     */
+    int cachedSegments() {
+        return segmentOrdinals.size();
+    }
+
+    private BytesRef label(int c) {
+        synchronized (classes) {
+            return BytesRef.deepCopyOf(classes.get(c, new BytesRef()));
+        }
+    }
+}
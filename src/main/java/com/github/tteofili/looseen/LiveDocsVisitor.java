@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.tteofili.looseen;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.ThreadInterruptedException;
+
+/**
+ * visits the stored fields of the live docs of a reader in parallel, each leaf is split in ranges of doc ids which are
+ * visited by a fixed no. of threads
+ */
+public final class LiveDocsVisitor {
+
+    private static final int RANGE_SIZE = 1024;
+
+    private LiveDocsVisitor() {
+    }
+
+    /**
+     * a visitor of stored docs, called concurrently by the visiting threads
+     */
+    public interface Visitor {
+        /**
+         * @param docId    the top level doc id
+         * @param document the stored fields of the doc
+         */
+        void visit(int docId, Document document) throws IOException;
+    }
+
+    /**
+     * @param reader  the reader to visit
+     * @param fields  the stored fields to load
+     * @param threads the no. of visiting threads
+     * @param visitor the visitor
+     */
+    public static void visit(IndexReader reader, Set<String> fields, int threads, Visitor visitor) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (LeafReaderContext context : reader.leaves()) {
+                LeafReader leafReader = context.reader();
+                for (int start = 0; start < leafReader.maxDoc(); start += RANGE_SIZE) {
+                    int from = start;
+                    int to = Math.min(leafReader.maxDoc(), start + RANGE_SIZE);
+                    futures.add(executor.submit(() -> {
+                        Bits liveDocs = leafReader.getLiveDocs();
+                        for (int doc = from; doc < to; doc++) {
+                            if (liveDocs == null || liveDocs.get(doc)) {
+                                visitor.visit(context.docBase + doc, leafReader.document(doc, fields));
+                            }
+                        }
+                        return null;
+                    }));
+                }
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            throw new ThreadInterruptedException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.tteofili.looseen;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * a bounded, least recently used, cache of values computed for texts, keyed by a 64 bits hash of the text.
+ * Each value can be bound to a version (e.g. of the index it was computed on), so that values computed for another
+ * version are not returned.
+ * Cached values are shared, so they must not be modified.
+ *
+ * @param <V> the type of the cached values
+ */
+public final class LruTextCache<V> {
+
+    private final Map<Long, Entry<V>> entries;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * @param maxSize the max no. of cached values
+     */
+    public LruTextCache(int maxSize) {
+        this.entries = new LinkedHashMap<Long, Entry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry<V>> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @return the cached value of the given text, or {@code null} if there is none
+     */
+    public V get(String text) {
+        return get(text, 0);
+    }
+
+    /**
+     * @param text    the text
+     * @param version the version the value must have been computed for
+     * @return the cached value of the given text, or {@code null} if there is none for the given version
+     */
+    public V get(String text, long version) {
+        Entry<V> entry;
+        synchronized (entries) {
+            entry = entries.get(hash(text));
+        }
+        if (entry != null && entry.version == version && entry.text.equals(text)) {
+            hitCount.incrementAndGet();
+            return entry.value;
+        }
+        missCount.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * @param text  the text the value was computed for
+     * @param value the value
+     * @return the given value
+     */
+    public V put(String text, V value) {
+        return put(text, 0, value);
+    }
+
+    /**
+     * @param text    the text the value was computed for
+     * @param version the version the value was computed for
+     * @param value   the value
+     * @return the given value
+     */
+    public V put(String text, long version, V value) {
+        Entry<V> entry = new Entry<>(text, version, value);
+        synchronized (entries) {
+            entries.put(hash(text), entry);
+        }
+        return value;
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * 64 bits FNV-1a hash of the chars of the given text, the key texts are cached by
+     */
+    public static long hash(String text) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < text.length(); i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "LruTextCache{" +
+                "size=" + size() +
+                ", hitCount=" + hitCount +
+                ", missCount=" + missCount +
+                '}';
+    }
+
+    private static final class Entry<V> {
+        private final String text;
+        private final long version;
+        private final V value;
+
+        private Entry(String text, long version, V value) {
+            this.text = text;
+            this.version = version;
+            this.value = value;
+        }
+    }
+}
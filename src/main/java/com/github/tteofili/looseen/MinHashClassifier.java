@@ -18,10 +18,22 @@ package com.github.tteofili.looseen;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenStream;
@@ -31,144 +43,456 @@ import org.apache.lucene.analysis.en.EnglishMinimalStemFilter;
 import org.apache.lucene.analysis.minhash.MinHashFilter;
 import org.apache.lucene.analysis.minhash.MinHashFilterFactory;
 import org.apache.lucene.analysis.shingle.ShingleFilterFactory;
-import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.TermToBytesRefAttribute;
 import org.apache.lucene.classification.ClassificationResult;
 import org.apache.lucene.classification.Classifier;
-import org.apache.lucene.document.Document;
-import org.apache.lucene.document.Field;
-import org.apache.lucene.document.StringField;
-import org.apache.lucene.document.TextField;
-import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
-import org.apache.lucene.index.IndexWriter;
-import org.apache.lucene.index.IndexWriterConfig;
-import org.apache.lucene.index.IndexableField;
-import org.apache.lucene.index.Term;
-import org.apache.lucene.search.BooleanClause;
-import org.apache.lucene.search.BooleanQuery;
-import org.apache.lucene.search.ConstantScoreQuery;
 import org.apache.lucene.search.IndexSearcher;
-import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
-import org.apache.lucene.search.TermQuery;
-import org.apache.lucene.search.TopDocs;
-import org.apache.lucene.store.RAMDirectory;
 import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefArray;
+import org.apache.lucene.util.Counter;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.ThreadInterruptedException;
 
 /**
- * a {@link Classifier} based on LSH via queries on in memory sidecar index using {@link MinHashFilter} to index passed
- * reader's docs.
+ * a {@link Classifier} based on LSH via queries on a {@link MinHashSidecar} index using {@link MinHashFilter} to index
+ * passed reader's docs.
+ * The sidecar index is either owned by the classifier or shared by several classifiers using different MinHash
+ * parameters, see {@link MinHashSidecar#classifier(int, int, int)}, so that parameter sweeps read the passed reader
+ * only once.
+ * Alternatively, see {@link Builder#lsh(int, int)}, docs can be kept as long signatures in an in memory
+ * {@link MinHashLSHIndex}, skipping Lucene search entirely.
+ * Instead of {@link MinHashFilter}'s {@code hashCount * hashSize} hashes per shingle, each shingle can be hashed once
+ * via one permutation hashing, see {@link Builder#onePermutation()}.
+ * Signatures kept in memory (or stored for re-ranking) can be shrunk to their lowest b bits, see
+ * {@link Builder#bits(int)}.
+ * Training examples can be condensed before indexing, dropping near duplicates of the same class, see
+ * {@link Builder#condense(double)}.
  */
 public class MinHashClassifier implements Classifier<BytesRef>, Closeable {
 
-    private static final String TEXT_FIELD = "text";
-    private static final String CLASS_FIELD = "class";
-    private final RAMDirectory directory;
+    private static final int DEFAULT_K = 3;
     private final int min;
     private final int hashCount;
     private final int hashSize;
+    private final int k;
+    private final int rerank;
+    private final boolean onePermutation;
+    private final int bits;
+    private final int threads;
+    private final MinHashSidecar sidecar;
+    private final boolean ownsSidecar;
+    private final String field;
+    private final Analyzer analyzer;
+    private final ClassVoter classVoter = new ClassVoter(MinHashSidecar.CLASS_FIELD);
+    private final SignatureGenerator signatureGenerator;
+    private final MinHashLSHIndex lshIndex;
+    private final Map<String, Integer> lshIds;
+    private final ReadWriteLock lshLock;
+    private final AtomicLong lshVersion;
+    private final LruTextCache<List<ClassificationResult<BytesRef>>> cache;
+    private final TrainingExamples.CondensedExamples condensed;
+    private ExecutorService executor;
 
     public MinHashClassifier(IndexReader reader, String textField, String categoryField, int min, int hashCount,
                              int hashSize) {
-        this.min = min;
-        this.hashCount = hashCount;
-        this.hashSize = hashSize;
-        try {
-            Analyzer analyzer = createMinHashAnalyzer(min, hashCount, hashSize);
-            IndexWriterConfig config = new IndexWriterConfig(analyzer);
-            directory = new RAMDirectory();
-            IndexWriter writer = new IndexWriter(directory, config);
-            for (int i = 0; i < reader.maxDoc(); i++) {
-                Document document = new Document();
-                Document d = reader.document(i);
-                String textValue = d.getField(textField).stringValue();
-                String categoryValue = d.getField(categoryField).stringValue();
-                document.add(new TextField(TEXT_FIELD, textValue, Field.Store.NO));
-                document.add(new StringField(CLASS_FIELD, categoryValue, Field.Store.YES));
-                writer.addDocument(document);
-            }
-            writer.commit();
-            writer.close();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-        BooleanQuery.setMaxClauseCount(Integer.MAX_VALUE);
-    }
-
-    List<ClassificationResult<BytesRef>> buildListFromTopDocs(IndexSearcher searcher, String categoryFieldName, TopDocs topDocs, int k) throws IOException {
-        Map<BytesRef, Integer> classCounts = new HashMap<>();
-        Map<BytesRef, Double> classBoosts = new HashMap<>(); // this is a boost based on class ranking positions in topDocs
-        float maxScore = topDocs.getMaxScore();
-        for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
-            IndexableField storableField = searcher.doc(scoreDoc.doc).getField(categoryFieldName);
-            if (storableField != null) {
-                BytesRef cl = new BytesRef(storableField.stringValue());
-                //update count
-                Integer count = classCounts.get(cl);
-                if (count != null) {
-                    classCounts.put(cl, count + 1);
-                } else {
-                    classCounts.put(cl, 1);
-                }
-                //update boost, the boost is based on the best score
-                Double totalBoost = classBoosts.get(cl);
-                double singleBoost = scoreDoc.score / maxScore;
-                if (totalBoost != null) {
-                    classBoosts.put(cl, totalBoost + singleBoost);
+        this(reader, textField, categoryField, min, hashCount, hashSize, null);
+    }
+
+    /**
+     * creates a classifier whose sidecar index is persisted under the given path, an existing sidecar index is reused
+     * as long as it was built with the same parameters out of the same reader.
+     *
+     * @param indexPath the path of the sidecar index, or {@code null} to keep it in memory
+     */
+    public MinHashClassifier(IndexReader reader, String textField, String categoryField, int min, int hashCount,
+                             int hashSize, Path indexPath) {
+        this(new Builder(min, hashCount, hashSize).indexPath(indexPath),
+                TrainingExamples.fromReader(reader, textField, categoryField));
+    }
+
+    private MinHashClassifier(Builder builder, TrainingExamples examples) {
+        this.min = builder.min;
+        this.hashCount = builder.hashCount;
+        this.hashSize = builder.hashSize;
+        this.k = builder.k;
+        this.rerank = builder.rerank;
+        this.onePermutation = builder.onePermutation;
+        this.bits = builder.bits;
+        this.threads = builder.threads;
+        this.cache = builder.cacheSize > 0 ? new LruTextCache<>(builder.cacheSize) : null;
+        this.ownsSidecar = true;
+        try (SignatureGenerator condensingGenerator = builder.condense > 0 ? createSignatureGenerator() : null) {
+            TrainingExamples trainingExamples = examples;
+            if (condensingGenerator != null) {
+                condensed = TrainingExamples.condense(examples, condensingGenerator, builder.condense);
+                trainingExamples = condensed;
+            } else {
+                condensed = null;
+            }
+            if (builder.bands > 0) {
+                sidecar = null;
+                field = null;
+                analyzer = null;
+                signatureGenerator = createSignatureGenerator();
+                lshIndex = new MinHashLSHIndex(signatureGenerator.length(), builder.bands, builder.rows, bits);
+                lshIds = new HashMap<>();
+                lshLock = new ReentrantReadWriteLock();
+                lshVersion = new AtomicLong();
+                trainingExamples.visit(builder.threads, (id, text, label) -> {
+                    long[] signature = signatureGenerator.signature(text);
+                    if (signature != null) {
+                        int classOrdinal = classVoter.ordinal(new BytesRef(label));
+                        synchronized (lshIndex) {
+                            lshIds.put(id, lshIndex.add(signature, classOrdinal));
+                        }
+                    }
+                });
+            } else {
+                signatureGenerator = null;
+                lshIndex = null;
+                lshIds = null;
+                lshLock = null;
+                lshVersion = null;
+                MinHashSidecar.Builder sidecarBuilder = new MinHashSidecar.Builder();
+                if (onePermutation) {
+                    sidecarBuilder.addOnePermutation(min, hashCount * hashSize);
                 } else {
-                    classBoosts.put(cl, singleBoost);
+                    sidecarBuilder.add(min, hashCount, hashSize);
                 }
+                sidecar = sidecarBuilder.indexPath(builder.indexPath).threads(builder.threads)
+                        .refreshInterval(builder.refreshInterval).shards(builder.shards).signatures(rerank > 0)
+                        .signatureBits(bits).build(trainingExamples);
+                field = field(min, hashCount, hashSize, onePermutation);
+                analyzer = sidecar.analyzer(field);
             }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private MinHashClassifier(Builder builder, MinHashSidecar sidecar) {
+        this.min = builder.min;
+        this.hashCount = builder.hashCount;
+        this.hashSize = builder.hashSize;
+        this.k = builder.k;
+        this.rerank = builder.rerank;
+        this.onePermutation = builder.onePermutation;
+        this.bits = sidecar.signatureBits();
+        this.threads = builder.threads;
+        this.cache = builder.cacheSize > 0 ? new LruTextCache<>(builder.cacheSize) : null;
+        this.sidecar = sidecar;
+        this.ownsSidecar = false;
+        this.condensed = null;
+        this.field = field(min, hashCount, hashSize, onePermutation);
+        this.analyzer = sidecar.analyzer(field);
+        if (!sidecar.hasField(field)) {
+            throw new IllegalArgumentException(sidecar + " has no field " + field);
+        }
+        if (rerank > 0 && !sidecar.storesSignatures(field)) {
+            throw new IllegalArgumentException(sidecar + " does not store signatures, required to rerank");
         }
-        List<ClassificationResult<BytesRef>> returnList = new ArrayList<>();
-        List<ClassificationResult<BytesRef>> temporaryList = new ArrayList<>();
-        int sumdoc = 0;
-        for (Map.Entry<BytesRef, Integer> entry : classCounts.entrySet()) {
-            Integer count = entry.getValue();
-            Double normBoost = classBoosts.get(entry.getKey()) / count; //the boost is normalized to be 0<b<1
-            temporaryList.add(new ClassificationResult<>(entry.getKey().clone(), (count * normBoost) / (double) k));
-            sumdoc += count;
+        if (builder.bits != Long.SIZE && builder.bits != bits) {
+            throw new IllegalArgumentException(sidecar + " stores signatures with " + bits + " bits");
         }
+        this.signatureGenerator = null;
+        this.lshIndex = null;
+        this.lshIds = null;
+        this.lshLock = null;
+        this.lshVersion = null;
+    }
 
-        //correction
-        if (sumdoc < k) {
-            for (ClassificationResult<BytesRef> cr : temporaryList) {
-                returnList.add(new ClassificationResult<>(cr.getAssignedClass(), cr.getScore() * k / (double) sumdoc));
-            }
+    private SignatureGenerator createSignatureGenerator() throws IOException {
+        if (onePermutation) {
+            return new OnePermutationSignatureGenerator(min, hashCount * hashSize);
         } else {
-            returnList = temporaryList;
+            return new MinHashSignatureGenerator(min, hashCount, hashSize);
         }
-        return returnList;
     }
 
-    @Override
-    public ClassificationResult<BytesRef> assignClass(String text) throws IOException {
-        DirectoryReader reader = DirectoryReader.open(directory);
-        IndexSearcher searcher = new IndexSearcher(reader);
+    private static String field(int min, int hashCount, int hashSize, boolean onePermutation) {
+        if (onePermutation) {
+            return MinHashSidecar.onePermutationField(min, hashCount * hashSize);
+        } else {
+            return MinHashSidecar.field(min, hashCount, hashSize);
+        }
+    }
+
+    /**
+     * @return the condensed training examples (telling how many examples were kept, unless a persisted sidecar index
+     * was reused), or {@code null} if the training examples were not condensed, see {@link Builder#condense(double)}
+     */
+    public TrainingExamples.CondensedExamples getCondensedExamples() {
+        return condensed;
+    }
+
+    /**
+     * @return the generator of the signatures texts are classified by, which can be shared (e.g. with a
+     * {@link NearDuplicateDetector}) so that texts are hashed once, see {@link #getClasses(long[])}; {@code null} if
+     * texts are hashed by the {@link MinHashFilter} analyzer of the sidecar index
+     */
+    public SignatureGenerator getSignatureGenerator() {
+        return lshIndex != null ? signatureGenerator : analyzer == null ? sidecar.signatureGenerator(field) : null;
+    }
+
+    /**
+     * @return the cache of classification results, or {@code null} if caching is disabled, see
+     * {@link Builder#cacheSize(int)}
+     */
+    public LruTextCache<List<ClassificationResult<BytesRef>>> getCache() {
+        return cache;
+    }
+
+    /**
+     * adds a training example, on a sidecar index it becomes visible to classification (by all the classifiers
+     * sharing the sidecar index) after the next near real time refresh, see {@link Builder#refreshInterval(long)},
+     * while on the LSH index it is visible right away
+     *
+     * @param text  the text of the example
+     * @param label the class of the example
+     * @return the id of the added example
+     */
+    public String addExample(String text, String label) throws IOException {
+        if (sidecar != null) {
+            return sidecar.addExample(text, label);
+        }
+        String id = UUID.randomUUID().toString();
+        long[] signature = signatureGenerator.signature(text);
+        // texts too short to be hashed can't be found, the same way they are skipped when training
+        if (signature != null) {
+            int classOrdinal = classVoter.ordinal(new BytesRef(label));
+            lshLock.writeLock().lock();
+            try {
+                lshIds.put(id, lshIndex.add(signature, classOrdinal));
+                lshVersion.incrementAndGet();
+            } finally {
+                lshLock.writeLock().unlock();
+            }
+        }
+        return id;
+    }
+
+    /**
+     * removes a training example, on a sidecar index the removal becomes visible to classification after the next
+     * near real time refresh, see {@link Builder#refreshInterval(long)}, while on the LSH index it is visible right
+     * away
+     *
+     * @param id the id of the example, as returned by {@link #addExample(String, String)}, or the (top level) doc id
+     *           of a doc of the reader the classifier was created with
+     */
+    public void removeExample(String id) throws IOException {
+        if (sidecar != null) {
+            sidecar.removeExample(id);
+            return;
+        }
+        lshLock.writeLock().lock();
         try {
-            int k = 3;
-            TopDocs topDocs = searcher.search(buildQuery(TEXT_FIELD, text, min, hashCount, hashSize), k);
-            if (topDocs.totalHits > 0) {
-                return buildListFromTopDocs(searcher, CLASS_FIELD, topDocs, k).get(0);
-//                Document document = reader.document(topDocs.scoreDocs[0].doc);
-//                String category = document.getField(CLASS_FIELD).stringValue();
-//                return new ClassificationResult<>(new BytesRef(category), topDocs.getMaxScore());
-            } else {
-                return null;
+            Integer doc = lshIds.remove(id);
+            if (doc != null) {
+                lshIndex.remove(doc);
+                lshVersion.incrementAndGet();
             }
         } finally {
-            reader.close();
+            lshLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * commits the training examples added or removed so far, see {@link MinHashSidecar#commit()}; changes of the in
+     * memory LSH index are not persisted, so this is a no-op for it
+     */
+    public void commit() throws IOException {
+        if (sidecar != null) {
+            sidecar.commit();
+        }
+    }
+
+    /**
+     * makes the training examples added or removed so far visible to classification, without waiting for the next
+     * near real time refresh of the sidecar index
+     */
+    void refresh() throws IOException {
+        if (sidecar != null) {
+            sidecar.refresh();
         }
     }
 
+    @Override
+    public ClassificationResult<BytesRef> assignClass(String text) throws IOException {
+        List<ClassificationResult<BytesRef>> classes = classify(text);
+        return classes.isEmpty() ? null : classes.get(0);
+    }
+
+    /**
+     * @return the voted classes sorted by descending score, as an unmodifiable list when caching is enabled, see
+     * {@link Builder#cacheSize(int)}
+     */
     @Override
     public List<ClassificationResult<BytesRef>> getClasses(String text) throws IOException {
-        return null;
+        return classify(text);
     }
 
     @Override
     public List<ClassificationResult<BytesRef>> getClasses(String text, int max) throws IOException {
-        return null;
+        List<ClassificationResult<BytesRef>> classes = classify(text);
+        // a copy, as the classes may be cached and shared with other callers
+        return new ArrayList<>(classes.subList(0, Math.min(max, classes.size())));
+    }
+
+    /**
+     * classifies a text by its signature, as generated by {@link #getSignatureGenerator()}, so that a text which was
+     * already hashed isn't hashed again; results are not cached, as the cache is keyed by text
+     *
+     * @param signature the signature of the text, or {@code null} for a text having no shingles
+     * @return the voted classes sorted by descending score
+     */
+    public List<ClassificationResult<BytesRef>> getClasses(long[] signature) throws IOException {
+        SignatureGenerator generator = getSignatureGenerator();
+        if (generator == null) {
+            throw new UnsupportedOperationException("texts are hashed by a MinHashFilter, not by signatures");
+        }
+        if (signature != null && signature.length != generator.length()) {
+            throw new IllegalArgumentException("signatures must have " + generator.length() + " values");
+        }
+        if (sidecar == null) {
+            return search(signature, null);
+        }
+        IndexSearcher[] searchers = sidecar.acquire();
+        try {
+            return search(signature, searchers);
+        } finally {
+            sidecar.release(searchers);
+        }
+    }
+
+    /**
+     * classifies a batch of texts concurrently, texts are analyzed and searched in parallel on the given executor,
+     * sharing the same searchers.
+     * If the classification of any text fails (or the calling thread is interrupted), the texts not classified yet
+     * are skipped and the failure is thrown once all the submitted tasks are done with the searchers.
+     *
+     * @param texts    the texts to classify
+     * @param executor the executor running the classification of each text
+     * @return the assigned class of each text (or {@code null} if no class could be assigned), in input order
+     */
+    public List<ClassificationResult<BytesRef>> classifyAll(List<String> texts, ExecutorService executor)
+            throws IOException {
+        IndexSearcher[] searchers = sidecar != null ? sidecar.acquire() : null;
+        AtomicBoolean aborted = new AtomicBoolean();
+        List<Future<List<ClassificationResult<BytesRef>>>> futures = new ArrayList<>(texts.size());
+        try {
+            for (String text : texts) {
+                futures.add(executor.submit(() -> aborted.get() ? null : classify(text, searchers)));
+            }
+            List<ClassificationResult<BytesRef>> results = new ArrayList<>(texts.size());
+            for (Future<List<ClassificationResult<BytesRef>>> future : futures) {
+                List<ClassificationResult<BytesRef>> classes = future.get();
+                results.add(classes.isEmpty() ? null : classes.get(0));
+            }
+            return results;
+        } catch (InterruptedException e) {
+            throw new ThreadInterruptedException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } finally {
+            aborted.set(true);
+            Futures.awaitAll(futures);
+            if (searchers != null) {
+                sidecar.release(searchers);
+            }
+        }
+    }
+
+    /**
+     * classifies a batch of texts concurrently on an executor owned by the classifier, which is created on first use
+     * with as many threads as {@link Builder#threads(int)} and shut down by {@link #close()}
+     *
+     * @see #classifyAll(List, ExecutorService)
+     */
+    public List<ClassificationResult<BytesRef>> classifyAll(List<String> texts) throws IOException {
+        return classifyAll(texts, executor());
+    }
+
+    private synchronized ExecutorService executor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(threads);
+        }
+        return executor;
+    }
+
+    private List<ClassificationResult<BytesRef>> classify(String text) throws IOException {
+        if (sidecar == null) {
+            return classify(text, null);
+        }
+        IndexSearcher[] searchers = sidecar.acquire();
+        try {
+            return classify(text, searchers);
+        } finally {
+            sidecar.release(searchers);
+        }
+    }
+
+    /**
+     * votes the classes of the k nearest neighbours of the given text, found either in the sidecar index (using the
+     * given searchers) or in the LSH index, unless they are cached
+     *
+     * @return all the voted classes, sorted by descending score
+     */
+    private List<ClassificationResult<BytesRef>> classify(String text, IndexSearcher[] searchers) throws IOException {
+        if (cache == null) {
+            return search(text, searchers);
+        }
+        // read before searching, so that results computed while the examples change are bound to the older version
+        long version = searchers != null ? MinHashSidecar.version(searchers) : lshVersion.get();
+        List<ClassificationResult<BytesRef>> classes = cache.get(text, version);
+        if (classes == null) {
+            classes = cache.put(text, version, Collections.unmodifiableList(search(text, searchers)));
+        }
+        return classes;
+    }
+
+    private List<ClassificationResult<BytesRef>> search(String text, IndexSearcher[] searchers) throws IOException {
+        SignatureGenerator generator = getSignatureGenerator();
+        if (generator != null) {
+            return search(generator.signature(text), searchers);
+        }
+        long[] signature = rerank > 0 ? sidecar.signatureGenerator(field).signature(text) : null;
+        return search(buildScorer(text), signature, searchers);
+    }
+
+    private List<ClassificationResult<BytesRef>> search(long[] signature, IndexSearcher[] searchers)
+            throws IOException {
+        if (signature == null) {
+            return Collections.emptyList();
+        }
+        if (lshIndex != null) {
+            ScoreDoc[] hits;
+            int[] classes;
+            lshLock.readLock().lock();
+            try {
+                hits = lshIndex.search(signature, k);
+                classes = lshIndex.classes(hits);
+            } finally {
+                lshLock.readLock().unlock();
+            }
+            return classVoter.vote(hits, classes, k);
+        }
+        // fields without an analyzer index the terms of their signatures
+        return search(new MinHashOverlapScorer(field, MinHashSidecar.terms(signature)), signature, searchers);
+    }
+
+    private List<ClassificationResult<BytesRef>> search(MinHashOverlapScorer scorer, long[] signature,
+                                                        IndexSearcher[] searchers) throws IOException {
+        if (rerank == 0 || signature == null) {
+            return sidecar.vote(searchers, (reader, scratch) -> scorer.search(reader, k, scratch), k, classVoter);
+        }
+        String signatureField = MinHashSidecar.signatureField(field);
+        return sidecar.vote(searchers, (reader, scratch) -> SignatureReranker.rerank(reader, signatureField, signature,
+                scorer.search(reader, Math.max(rerank, k), scratch), k, bits), k, classVoter);
     }
 
     public static Analyzer createMinHashAnalyzer(int min, int hashCount, int hashSetSize) throws IOException {
@@ -189,34 +513,35 @@ public class MinHashClassifier implements Classifier<BytesRef>, Closeable {
         return builder.build();
     }
 
-    private Query buildQuery(String field, String query, int min, int hashCount, int hashSetSize) throws IOException {
-        Analyzer chain = createMinHashAnalyzer(min, hashCount, hashSetSize);
-        ArrayList<String> tokens = getTokens(chain, field, query);
-        chain.close();
-        BooleanQuery.Builder builder = new BooleanQuery.Builder();
-        for (String token : tokens) {
-            builder.add(new ConstantScoreQuery(new TermQuery(new Term("text", token))), BooleanClause.Occur.SHOULD);
-        }
-        return builder.build();
+    /**
+     * builds the scorer out of the hashes generated by the analyzer of the classifier's field, which is created once
+     * and reuses its token streams on a per thread basis
+     */
+    private MinHashOverlapScorer buildScorer(String text) throws IOException {
+        return new MinHashOverlapScorer(field, getTokens(analyzer, field, text));
     }
 
-    private ArrayList<String> getTokens(Analyzer analyzer, String field, String value) throws IOException {
-        ArrayList<String> tokens = new ArrayList<String>();
-        TokenStream ts = analyzer.tokenStream(field, value);
-        ts.reset();
-        while (ts.incrementToken()) {
-            CharTermAttribute termAttribute = ts.getAttribute(CharTermAttribute.class);
-            String token = new String(termAttribute.buffer(), 0, termAttribute.length());
-            tokens.add(token);
+    private BytesRefArray getTokens(Analyzer analyzer, String field, String value) throws IOException {
+        BytesRefArray tokens = new BytesRefArray(Counter.newCounter());
+        try (TokenStream ts = analyzer.tokenStream(field, value)) {
+            TermToBytesRefAttribute termAttribute = ts.addAttribute(TermToBytesRefAttribute.class);
+            ts.reset();
+            while (ts.incrementToken()) {
+                tokens.append(termAttribute.getBytesRef());
+            }
+            ts.end();
         }
-        ts.end();
-        ts.close();
         return tokens;
     }
 
     @Override
-    public void close() {
-        directory.close();
+    public void close() throws IOException {
+        synchronized (this) {
+            if (executor != null) {
+                executor.shutdown();
+            }
+        }
+        IOUtils.close(ownsSidecar ? sidecar : null, signatureGenerator);
     }
 
     @Override
@@ -225,6 +550,196 @@ public class MinHashClassifier implements Classifier<BytesRef>, Closeable {
                 "min=" + min +
                 ", hashCount=" + hashCount +
                 ", hashSize=" + hashSize +
+                (k != DEFAULT_K ? ", k=" + k : "") +
+                (rerank > 0 ? ", rerank=" + rerank : "") +
+                (onePermutation ? ", onePermutation" : "") +
+                (bits < Long.SIZE && (lshIndex != null || rerank > 0) ? ", bits=" + bits : "") +
+                (condensed != null ? ", condensed=" + condensed : "") +
+                (lshIndex != null ? ", lsh=" + lshIndex : "") +
                 '}';
     }
+
+    /**
+     * builder for {@link MinHashClassifier}s, by default the sidecar index is kept in memory
+     */
+    public static class Builder {
+
+        private final int min;
+        private final int hashCount;
+        private final int hashSize;
+        private Path indexPath;
+        private int bands;
+        private int rows;
+        private int threads = Runtime.getRuntime().availableProcessors();
+        private long refreshInterval = 1000;
+        private int k = DEFAULT_K;
+        private int cacheSize;
+        private int rerank;
+        private boolean onePermutation;
+        private int bits = Long.SIZE;
+        private double condense;
+        private int shards = 1;
+
+        /**
+         * @param min       the size of the word shingles
+         * @param hashCount the no. of hash functions
+         * @param hashSize  the no. of hashes kept per hash function
+         */
+        public Builder(int min, int hashCount, int hashSize) {
+            this.min = min;
+            this.hashCount = hashCount;
+            this.hashSize = hashSize;
+        }
+
+        /**
+         * persists the sidecar index under the given path, an existing sidecar index is reused as long as it was built
+         * with the same parameters out of the same reader
+         */
+        public Builder indexPath(Path indexPath) {
+            this.indexPath = indexPath;
+            return this;
+        }
+
+        /**
+         * replaces the sidecar index with an in memory {@link MinHashLSHIndex} of {@code hashCount * hashSize} long
+         * signatures, split in the given no. of bands of the given no. of rows
+         */
+        public Builder lsh(int bands, int rows) {
+            if (bands <= 0 || rows <= 0) {
+                throw new IllegalArgumentException("bands and rows must be positive");
+            }
+            this.bands = bands;
+            this.rows = rows;
+            return this;
+        }
+
+        /**
+         * sets the no. of threads used to read and hash the reader's docs, and to classify batches of texts, see
+         * {@link MinHashClassifier#classifyAll(List)}, defaults to the no. of available processors
+         */
+        public Builder threads(int threads) {
+            if (threads <= 0) {
+                throw new IllegalArgumentException("threads must be positive");
+            }
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * sets the max interval (in milliseconds) between near real time refreshes of the sidecar index, after which
+         * added or removed training examples are visible to classification, defaults to 1 second
+         */
+        public Builder refreshInterval(long refreshInterval) {
+            if (refreshInterval <= 0) {
+                throw new IllegalArgumentException("refreshInterval must be positive");
+            }
+            this.refreshInterval = refreshInterval;
+            return this;
+        }
+
+        /**
+         * sets the no. of nearest neighbours whose classes are voted, defaults to 3
+         */
+        public Builder k(int k) {
+            if (k <= 0) {
+                throw new IllegalArgumentException("k must be positive");
+            }
+            this.k = k;
+            return this;
+        }
+
+        /**
+         * caches the classification results of up to the given no. of distinct texts, disabled by default
+         */
+        public Builder cacheSize(int cacheSize) {
+            this.cacheSize = cacheSize;
+            return this;
+        }
+
+        /**
+         * partitions the sidecar index in the given no. of shards, which are searched concurrently by each query,
+         * defaults to 1
+         */
+        public Builder shards(int shards) {
+            if (shards <= 0) {
+                throw new IllegalArgumentException("shards must be positive");
+            }
+            this.shards = shards;
+            return this;
+        }
+
+        /**
+         * retrieves the top given no. of docs by MinHash overlap and re-ranks them by the Jaccard similarity estimated
+         * from their packed signatures, before voting the classes of the top k ones; this requires the sidecar index
+         * to store signatures, see {@link MinHashSidecar.Builder#signatures(boolean)}, and has no effect on the LSH
+         * index, which already ranks by signature agreement
+         */
+        public Builder rerank(int rerank) {
+            if (rerank <= 0) {
+                throw new IllegalArgumentException("rerank must be positive");
+            }
+            this.rerank = rerank;
+            return this;
+        }
+
+        /**
+         * uses one permutation hashing signatures of {@code hashCount * hashSize} bins instead of
+         * {@link MinHashFilter}'s hashes, see {@link OnePermutationSignatureGenerator}
+         */
+        public Builder onePermutation() {
+            this.onePermutation = true;
+            return this;
+        }
+
+        /**
+         * keeps only the lowest given no. of bits (1, 2, 4, ..., 64) of each value of the signatures held by the
+         * {@link MinHashLSHIndex} or stored for re-ranking, packed {@code 64 / bits} values per word; similarities are
+         * corrected for the random collisions of truncated values, see {@link BBitSignatures}. Defaults to 64.
+         * This has no effect on the terms of the sidecar index, so it only applies to {@link #lsh(int, int)} and
+         * {@link #rerank(int)}.
+         */
+        public Builder bits(int bits) {
+            BBitSignatures.checkBits(bits);
+            this.bits = bits;
+            return this;
+        }
+
+        /**
+         * condenses the training examples before indexing them, dropping the examples having an estimated Jaccard
+         * similarity of at least the given threshold with an already kept example of the same class, see
+         * {@link TrainingExamples#condense(TrainingExamples, SignatureGenerator, double)}; condensing with more than
+         * one thread is not reproducible, see {@link #threads(int)}
+         */
+        public Builder condense(double jaccardThreshold) {
+            if (jaccardThreshold <= 0 || jaccardThreshold > 1) {
+                throw new IllegalArgumentException("jaccardThreshold must be in (0, 1]");
+            }
+            this.condense = jaccardThreshold;
+            return this;
+        }
+
+        public MinHashClassifier build(IndexReader reader, String textField, String categoryField) {
+            return build(TrainingExamples.fromReader(reader, textField, categoryField));
+        }
+
+        /**
+         * builds a classifier out of the given (text, label) pairs, without requiring a Lucene index of the training
+         * examples, see {@link TrainingExamples#fromIterator(Iterator)}
+         */
+        public MinHashClassifier build(Iterator<? extends Map.Entry<String, String>> examples) {
+            return build(TrainingExamples.fromIterator(examples));
+        }
+
+        public MinHashClassifier build(TrainingExamples examples) {
+            return new MinHashClassifier(this, examples);
+        }
+
+        /**
+         * builds a classifier on a shared sidecar index, which must have been built with this builder's MinHash
+         * parameters; the sidecar index related settings of this builder are ignored
+         */
+        public MinHashClassifier build(MinHashSidecar sidecar) {
+            return new MinHashClassifier(this, sidecar);
+        }
+    }
 }
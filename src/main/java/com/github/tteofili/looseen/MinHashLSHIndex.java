@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.tteofili.looseen;
+
+import java.util.Arrays;
+
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.PriorityQueue;
+
+/**
+ * an in memory banded LSH index of MinHash signatures.
+ * The first {@code bands * rows} values of each signature are split in bands of rows values, each band is hashed into
+ * a {@link BucketTable} pointing to the docs sharing that band; candidates colliding with a query in at least one band
+ * are re-ranked by the fraction of signature values they agree on.
+ * Signatures can be kept as b-bit values, see {@link BBitSignatures}: bands are still hashed out of the full values,
+ * while candidates are re-ranked by their collision corrected agreement.
+ * Removed signatures are only marked as deleted, they are skipped by searches but keep their slot in the bucket tables.
+ * Adding or removing signatures is not thread safe, searching is.
+ */
+public final class MinHashLSHIndex {
+
+    private final int length;
+    private final int bands;
+    private final int rows;
+    private final int bits;
+    private final int words;
+    private final BucketTable[] tables;
+    private long[] signatures;
+    private int[] classes;
+    private FixedBitSet deleted = new FixedBitSet(0);
+    private int size;
+    private int deletedCount;
+
+    /**
+     * @param length the length of the signatures
+     * @param bands  the no. of bands
+     * @param rows   the no. of signature values per band
+     */
+    public MinHashLSHIndex(int length, int bands, int rows) {
+        this(length, bands, rows, Long.SIZE);
+    }
+
+    /**
+     * @param length the length of the signatures
+     * @param bands  the no. of bands
+     * @param rows   the no. of signature values per band
+     * @param bits   the no. of lowest bits of each signature value to keep, see {@link BBitSignatures}
+     */
+    public MinHashLSHIndex(int length, int bands, int rows, int bits) {
+        BBitSignatures.checkBits(bits);
+        if (bands * rows > length) {
+            throw new IllegalArgumentException("bands * rows must not exceed the signature length " + length);
+        }
+        this.length = length;
+        this.bands = bands;
+        this.rows = rows;
+        this.bits = bits;
+        this.words = BBitSignatures.words(length, bits);
+        this.tables = new BucketTable[bands];
+        for (int band = 0; band < bands; band++) {
+            tables[band] = new BucketTable();
+        }
+        this.signatures = new long[16 * words];
+        this.classes = new int[16];
+    }
+
+    /**
+     * adds a signature
+     *
+     * @param signature    the signature
+     * @param classOrdinal the ordinal of the class of the signature
+     * @return the id of the added signature
+     */
+    public int add(long[] signature, int classOrdinal) {
+        int doc = size++;
+        signatures = ArrayUtil.grow(signatures, size * words);
+        BBitSignatures.pack(signature, bits, signatures, doc * words);
+        classes = ArrayUtil.grow(classes, size);
+        classes[doc] = classOrdinal;
+        for (int band = 0; band < bands; band++) {
+            tables[band].add(bandKey(signature, band), doc);
+        }
+        return doc;
+    }
+
+    /**
+     * removes a signature, which is no longer returned by searches
+     *
+     * @param doc the id of the signature, as returned by {@link #add(long[], int)}
+     * @return whether the signature was removed, {@code false} if it had already been removed
+     */
+    public boolean remove(int doc) {
+        if (doc < 0 || doc >= size) {
+            throw new IllegalArgumentException("no signature with id " + doc);
+        }
+        deleted = FixedBitSet.ensureCapacity(deleted, doc);
+        if (deleted.getAndSet(doc)) {
+            return false;
+        }
+        deletedCount++;
+        return true;
+    }
+
+    /**
+     * @param signature the signature of the query
+     * @param k         the max no. of signatures to return
+     * @return the top k signatures colliding in at least one band with the query, sorted by descending agreement
+     */
+    public ScoreDoc[] search(long[] signature, int k) {
+        int[] candidates = candidates(signature);
+        long[] packed = BBitSignatures.pack(signature, bits);
+        PriorityQueue<ScoreDoc> queue = new PriorityQueue<ScoreDoc>(k) {
+            @Override
+            protected boolean lessThan(ScoreDoc a, ScoreDoc b) {
+                return a.score == b.score ? a.doc > b.doc : a.score < b.score;
+            }
+        };
+        for (int doc : candidates) {
+            float score = score(packed, doc);
+            if (queue.size() < k || score > queue.top().score) {
+                queue.insertWithOverflow(new ScoreDoc(doc, score));
+            }
+        }
+        ScoreDoc[] hits = new ScoreDoc[queue.size()];
+        for (int i = hits.length - 1; i >= 0; i--) {
+            hits[i] = queue.pop();
+        }
+        return hits;
+    }
+
+    /**
+     * @param signature the signature of the query
+     * @param minScore  the min estimated Jaccard similarity of a returned signature with the query
+     * @return all the signatures colliding in at least one band with the query and having at least {@code minScore}
+     * estimated similarity with it, sorted by id
+     */
+    public ScoreDoc[] searchAbove(long[] signature, float minScore) {
+        int[] candidates = candidates(signature);
+        long[] packed = BBitSignatures.pack(signature, bits);
+        ScoreDoc[] hits = new ScoreDoc[candidates.length];
+        int count = 0;
+        for (int doc : candidates) {
+            float score = score(packed, doc);
+            if (score >= minScore) {
+                hits[count++] = new ScoreDoc(doc, score);
+            }
+        }
+        return Arrays.copyOf(hits, count);
+    }
+
+    /**
+     * @return the class ordinals of the given hits
+     */
+    public int[] classes(ScoreDoc[] hits) {
+        int[] hitClasses = new int[hits.length];
+        for (int i = 0; i < hits.length; i++) {
+            hitClasses[i] = classes[hits[i].doc];
+        }
+        return hitClasses;
+    }
+
+    /**
+     * @return the no. of signatures added and not removed
+     */
+    public int size() {
+        return size - deletedCount;
+    }
+
+    @Override
+    public String toString() {
+        return bands + "x" + rows + (bits < Long.SIZE ? "@" + bits + "bits" : "");
+    }
+
+    /**
+     * @return the sorted ids of the distinct live signatures colliding in at least one band with the given one
+     */
+    private int[] candidates(long[] signature) {
+        int[] candidates = new int[16];
+        int count = 0;
+        for (int band = 0; band < bands; band++) {
+            BucketTable table = tables[band];
+            for (int doc = table.head(bandKey(signature, band)); doc != -1; doc = table.next(doc)) {
+                candidates = ArrayUtil.grow(candidates, count + 1);
+                candidates[count++] = doc;
+            }
+        }
+        Arrays.sort(candidates, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if ((i == 0 || candidates[i - 1] != candidates[i])
+                    && (candidates[i] >= deleted.length() || !deleted.get(candidates[i]))) {
+                candidates[distinct++] = candidates[i];
+            }
+        }
+        return Arrays.copyOf(candidates, distinct);
+    }
+
+    private float score(long[] packed, int doc) {
+        int agreement = BBitSignatures.agreement(packed, 0, signatures, doc * words, length, bits);
+        return BBitSignatures.similarity(agreement, length, bits);
+    }
+
+    private long bandKey(long[] signature, int band) {
+        long key = band;
+        for (int i = band * rows, end = i + rows; i < end; i++) {
+            key = MinHashSignatureGenerator.mix(key ^ signature[i]);
+        }
+        return key;
+    }
+}
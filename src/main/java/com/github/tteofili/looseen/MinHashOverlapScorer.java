@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.tteofili.looseen;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefArray;
+import org.apache.lucene.util.BytesRefIterator;
+import org.apache.lucene.util.Counter;
+import org.apache.lucene.util.PriorityQueue;
+
+/**
+ * scores the docs of an index by the MinHash terms they share with a given text: instead of combining one scorer per
+ * hash, it visits the hashes term at a time and counts how many of them each doc shares with the text.
+ * Docs are scored by their estimated Jaccard similarity with the text, that is the fraction of its hashes they
+ * contain.
+ * Counts are kept in an array along with the ids of the docs having a non zero count, so that selecting the top docs
+ * and resetting the counts is proportional to the matching docs rather than to the size of the index; arrays can be
+ * reused across searches through a {@link Scratch} owned by the searching component.
+ */
+public final class MinHashOverlapScorer {
+
+    private final String field;
+    private final BytesRefArray terms;
+
+    /**
+     * @param field the field containing the MinHash terms
+     * @param terms the MinHash terms of the scored text, duplicate terms count once per occurrence
+     */
+    public MinHashOverlapScorer(String field, BytesRefArray terms) throws IOException {
+        this.field = field;
+        this.terms = new BytesRefArray(Counter.newCounter());
+        BytesRefIterator iterator = terms.iterator(Comparator.naturalOrder()); // sorted terms make seeks sequential
+        for (BytesRef term = iterator.next(); term != null; term = iterator.next()) {
+            this.terms.append(term);
+        }
+    }
+
+    /**
+     * @param reader the reader to search
+     * @param k      the max no. of docs to return
+     * @return the top k docs (having at least one hash in common with the text) sorted by descending score
+     */
+    public ScoreDoc[] search(IndexReader reader, int k) throws IOException {
+        return search(reader, k, new Counts());
+    }
+
+    /**
+     * @param reader  the reader to search
+     * @param k       the max no. of docs to return
+     * @param scratch the scratch the counts are taken from and given back to
+     * @return the top k docs (having at least one hash in common with the text) sorted by descending score
+     */
+    public ScoreDoc[] search(IndexReader reader, int k, Scratch scratch) throws IOException {
+        Counts counts = scratch.acquire();
+        try {
+            return search(reader, k, counts);
+        } finally {
+            scratch.release(counts);
+        }
+    }
+
+    private ScoreDoc[] search(IndexReader reader, int k, Counts counts) throws IOException {
+        counts.grow(reader.maxDoc());
+        try {
+            for (LeafReaderContext context : reader.leaves()) {
+                count(context, counts);
+            }
+            return top(counts, k);
+        } finally {
+            counts.clear();
+        }
+    }
+
+    private void count(LeafReaderContext context, Counts counts) throws IOException {
+        LeafReader leafReader = context.reader();
+        Terms fieldTerms = leafReader.terms(field);
+        if (fieldTerms == null) {
+            return;
+        }
+        TermsEnum termsEnum = fieldTerms.iterator();
+        Bits liveDocs = leafReader.getLiveDocs();
+        PostingsEnum postings = null;
+        BytesRefIterator iterator = terms.iterator();
+        for (BytesRef term = iterator.next(); term != null; term = iterator.next()) {
+            if (termsEnum.seekExact(term)) {
+                postings = termsEnum.postings(postings, PostingsEnum.NONE);
+                for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings.nextDoc()) {
+                    if (liveDocs == null || liveDocs.get(doc)) {
+                        counts.increment(context.docBase + doc);
+                    }
+                }
+            }
+        }
+    }
+
+    private ScoreDoc[] top(Counts counts, int k) {
+        PriorityQueue<ScoreDoc> queue = new PriorityQueue<ScoreDoc>(k) {
+            @Override
+            protected boolean lessThan(ScoreDoc a, ScoreDoc b) {
+                return a.score == b.score ? a.doc > b.doc : a.score < b.score;
+            }
+        };
+        float size = terms.size();
+        for (int i = 0; i < counts.touched; i++) {
+            int doc = counts.docs[i];
+            int count = counts.counts[doc];
+            // docs are not visited in id order, so ties are broken the same way the queue does
+            if (queue.size() < k || count / size > queue.top().score
+                    || (count / size == queue.top().score && doc < queue.top().doc)) {
+                queue.insertWithOverflow(new ScoreDoc(doc, count / size));
+            }
+        }
+        ScoreDoc[] topDocs = new ScoreDoc[queue.size()];
+        for (int i = topDocs.length - 1; i >= 0; i--) {
+            topDocs[i] = queue.pop();
+        }
+        return topDocs;
+    }
+
+    @Override
+    public String toString() {
+        return "MinHashOverlapScorer{" +
+                "field='" + field + '\'' +
+                ", terms=" + terms.size() +
+                '}';
+    }
+
+    /**
+     * the count arrays of the searches of a component (e.g. of an index shard), each concurrent search takes its own
+     * and gives it back when done, so that they're reused by later searches; they're freed along with the component,
+     * or by {@link #clear()}
+     */
+    public static final class Scratch {
+
+        private final Queue<Counts> pool = new ConcurrentLinkedQueue<>();
+
+        private Counts acquire() {
+            Counts counts = pool.poll();
+            return counts != null ? counts : new Counts();
+        }
+
+        private void release(Counts counts) {
+            pool.offer(counts);
+        }
+
+        /**
+         * frees the count arrays which are not in use
+         */
+        public void clear() {
+            pool.clear();
+        }
+    }
+
+    /**
+     * the per doc counts of a search, along with the docs whose count is non zero
+     */
+    private static final class Counts {
+
+        private int[] counts = new int[0];
+        private int[] docs = new int[0];
+        private int touched;
+
+        private void grow(int maxDoc) {
+            if (counts.length < maxDoc) {
+                counts = new int[ArrayUtil.oversize(maxDoc, Integer.BYTES)];
+            }
+        }
+
+        private void increment(int doc) {
+            if (counts[doc]++ == 0) {
+                if (touched == docs.length) {
+                    docs = ArrayUtil.grow(docs, touched + 1);
+                }
+                docs[touched++] = doc;
+            }
+        }
+
+        private void clear() {
+            for (int i = 0; i < touched; i++) {
+                counts[docs[i]] = 0;
+            }
+            touched = 0;
+        }
+    }
+}
@@ -0,0 +1,693 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.tteofili.looseen;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.analysis.minhash.MinHashFilter;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
+import org.apache.lucene.classification.ClassificationResult;
+import org.apache.lucene.document.BinaryDocValuesField;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.ControlledRealTimeReopenThread;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefArray;
+import org.apache.lucene.util.BytesRefIterator;
+import org.apache.lucene.util.Counter;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.ThreadInterruptedException;
+
+/**
+ * a sidecar index of the MinHash signatures of a reader's docs, used by {@link MinHashClassifier}s.
+ * Each set of MinHash parameters is indexed in its own field, so that a single pass over the reader serves any no. of
+ * classifiers, see {@link #classifier(int, int, int)}; besides {@link MinHashFilter} fields, one permutation hashing
+ * signatures can be indexed as terms too, see {@link Builder#addOnePermutation(int, int)}.
+ * The sidecar index is built out of {@link TrainingExamples}, either a reader's docs or any iterator of (text, label)
+ * pairs, and is either kept in memory or persisted under a local path, in which case it gets memory mapped and rebuilt
+ * only if the training examples or the MinHash parameters have changed since it was written.
+ * Queries are run through a {@link SearcherManager} per shard, training examples can be added to (or removed from)
+ * the sidecar index, changes become visible through periodic near real time refreshes and are persisted by
+ * {@link #commit()}.
+ * The sidecar index can be partitioned in shards, docs are assigned to shards by the hash of their id and each query
+ * searches all the shards concurrently, see {@link Builder#shards(int)}.
+ */
+public final class MinHashSidecar implements Closeable {
+
+    static final String CLASS_FIELD = "class";
+    private static final String ID_FIELD = "id";
+    private static final String FINGERPRINT = "fingerprint";
+    private static final String CHANGES = "changes";
+    private static final int FORMAT_VERSION = 4;
+
+    private final Map<String, Analyzer> analyzers;
+    private final Map<String, SignatureGenerator> signatureGenerators;
+    private final Set<String> signatureTermFields;
+    private final boolean storeSignatures;
+    private final int signatureBits;
+    private final Analyzer analyzer;
+    private final Shard[] shards;
+    private final ExecutorService searchExecutor;
+    private final boolean created;
+
+    private MinHashSidecar(Builder builder, TrainingExamples examples) throws IOException {
+        if (builder.parameters.isEmpty() && builder.onePermutations.isEmpty()) {
+            throw new IllegalArgumentException("at least one set of MinHash parameters is required");
+        }
+        storeSignatures = builder.signatures;
+        signatureBits = builder.signatureBits;
+        analyzers = new LinkedHashMap<>();
+        signatureGenerators = new LinkedHashMap<>();
+        signatureTermFields = new LinkedHashSet<>();
+        for (int[] parameters : builder.parameters) {
+            String field = field(parameters[0], parameters[1], parameters[2]);
+            analyzers.put(field, MinHashClassifier.createMinHashAnalyzer(parameters[0], parameters[1], parameters[2]));
+            if (storeSignatures) {
+                signatureGenerators.put(field,
+                        new MinHashSignatureGenerator(parameters[0], parameters[1], parameters[2]));
+            }
+        }
+        for (int[] parameters : builder.onePermutations) {
+            String field = onePermutationField(parameters[0], parameters[1]);
+            signatureGenerators.put(field, new OnePermutationSignatureGenerator(parameters[0], parameters[1]));
+            signatureTermFields.add(field);
+        }
+        analyzer = new PerFieldAnalyzerWrapper(new KeywordAnalyzer(), analyzers);
+        Set<String> fields = new LinkedHashSet<>(analyzers.keySet());
+        fields.addAll(signatureTermFields);
+        shards = new Shard[builder.shards];
+        boolean create = false;
+        for (int i = 0; i < shards.length; i++) {
+            Directory directory;
+            if (builder.indexPath == null) {
+                directory = new RAMDirectory();
+            } else if (shards.length == 1) {
+                directory = new MMapDirectory(builder.indexPath);
+            } else {
+                directory = new MMapDirectory(builder.indexPath.resolve("shard" + i));
+            }
+            String fingerprint = fingerprint(examples, fields, storeSignatures ? signatureBits : 0, i, shards.length);
+            shards[i] = new Shard(directory, fingerprint);
+            Map<String, String> userData = readUserData(directory);
+            create |= fingerprint == null || !fingerprint.equals(userData.get(FINGERPRINT));
+            shards[i].changes.set(Long.parseLong(userData.getOrDefault(CHANGES, "0")));
+        }
+        for (Shard shard : shards) {
+            IndexWriterConfig config = new IndexWriterConfig(analyzer);
+            config.setOpenMode(create ? IndexWriterConfig.OpenMode.CREATE : IndexWriterConfig.OpenMode.APPEND);
+            shard.writer = new IndexWriter(shard.directory, config);
+        }
+        created = create;
+        if (create) {
+            // analysis happens in IndexWriter#addDocument, which can be called concurrently
+            examples.visit(builder.threads, (id, text, label) ->
+                    shard(id).writer.addDocument(createDocument(id, text, label)));
+            for (Shard shard : shards) {
+                shard.changes.set(0);
+                shard.commit();
+            }
+        }
+        for (int i = 0; i < shards.length; i++) {
+            Shard shard = shards[i];
+            shard.searcherManager = new SearcherManager(shard.writer, null);
+            shard.reopenThread = new ControlledRealTimeReopenThread<>(shard.writer, shard.searcherManager,
+                    builder.refreshInterval / 1000d, 0);
+            shard.reopenThread.setName("MinHashSidecar NRT reopen" + (shards.length > 1 ? " shard" + i : ""));
+            shard.reopenThread.setDaemon(true);
+            shard.reopenThread.start();
+        }
+        // the calling thread searches the first shard
+        searchExecutor = shards.length > 1 ? Executors.newFixedThreadPool(shards.length - 1) : null;
+    }
+
+    /**
+     * @return the name of the field indexing the signatures created with the given MinHash parameters
+     */
+    static String field(int min, int hashCount, int hashSize) {
+        return "text_" + min + "_" + hashCount + "_" + hashSize;
+    }
+
+    /**
+     * @return the name of the field indexing the one permutation hashing signatures with the given no. of bins
+     */
+    static String onePermutationField(int min, int bins) {
+        return "oph_" + min + "_" + bins;
+    }
+
+    /**
+     * @return the name of the binary doc values field storing the packed signatures of the given field
+     */
+    static String signatureField(String field) {
+        return field + "_signature";
+    }
+
+    /**
+     * @return the analyzer of the given field, or {@code null} if the given field is not indexed
+     */
+    Analyzer analyzer(String field) {
+        return analyzers.get(field);
+    }
+
+    /**
+     * @return the generator of the signatures of the given field, or {@code null} if the given field has no signatures
+     */
+    SignatureGenerator signatureGenerator(String field) {
+        return signatureGenerators.get(field);
+    }
+
+    /**
+     * @return whether the given field is indexed, either by a {@link MinHashFilter} or as signature terms
+     */
+    boolean hasField(String field) {
+        return analyzers.containsKey(field) || signatureTermFields.contains(field);
+    }
+
+    /**
+     * @return whether the packed signatures of the given field are stored in binary doc values
+     */
+    boolean storesSignatures(String field) {
+        return storeSignatures && signatureGenerators.containsKey(field);
+    }
+
+    /**
+     * @return the no. of bits the values of the stored signatures are packed with, see
+     * {@link Builder#signatureBits(int)}
+     */
+    int signatureBits() {
+        return signatureBits;
+    }
+
+    /**
+     * @return whether the sidecar index was built out of the training examples, rather than reused as it was persisted
+     */
+    boolean created() {
+        return created;
+    }
+
+    /**
+     * @return the no. of training examples added to or removed from the sidecar index since it was built, including
+     * the committed changes of a reused persisted sidecar index
+     */
+    public long changes() {
+        long changes = 0;
+        for (Shard shard : shards) {
+            changes += shard.changes.get();
+        }
+        return changes;
+    }
+
+    /**
+     * encodes each value of the given signature as a term made of its position and its value, so that the no. of
+     * terms two docs share is the no. of signature values they agree on
+     */
+    static BytesRefArray terms(long[] signature) {
+        BytesRefArray terms = new BytesRefArray(Counter.newCounter());
+        if (signature != null) {
+            byte[] bytes = new byte[Integer.BYTES + Long.BYTES];
+            BytesRef term = new BytesRef(bytes);
+            for (int i = 0; i < signature.length; i++) {
+                for (int b = 0; b < Integer.BYTES; b++) {
+                    bytes[b] = (byte) (i >>> (24 - 8 * b));
+                }
+                for (int b = 0; b < Long.BYTES; b++) {
+                    bytes[Integer.BYTES + b] = (byte) (signature[i] >>> (56 - 8 * b));
+                }
+                terms.append(term);
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * @return a searcher per shard, to be released via {@link #release(IndexSearcher[])}
+     */
+    IndexSearcher[] acquire() throws IOException {
+        IndexSearcher[] searchers = new IndexSearcher[shards.length];
+        boolean success = false;
+        try {
+            for (int i = 0; i < shards.length; i++) {
+                searchers[i] = shards[i].searcherManager.acquire();
+            }
+            success = true;
+        } finally {
+            if (!success) {
+                release(searchers);
+            }
+        }
+        return searchers;
+    }
+
+    void release(IndexSearcher[] searchers) throws IOException {
+        for (int i = 0; i < shards.length; i++) {
+            if (searchers[i] != null) {
+                shards[i].searcherManager.release(searchers[i]);
+            }
+        }
+    }
+
+    /**
+     * @return a version of the given searchers' readers, which increases whenever any of the shards changes
+     */
+    static long version(IndexSearcher[] searchers) {
+        long version = 0;
+        for (IndexSearcher searcher : searchers) {
+            version += ((DirectoryReader) searcher.getIndexReader()).getVersion();
+        }
+        return version;
+    }
+
+    /**
+     * a search of the top hits of a single shard
+     */
+    interface ShardSearch {
+        /**
+         * @param reader  the reader of the shard
+         * @param scratch the scratch of the overlap counts of the shard
+         */
+        ScoreDoc[] search(IndexReader reader, MinHashOverlapScorer.Scratch scratch) throws IOException;
+    }
+
+    /**
+     * runs the given search on each shard concurrently and votes the classes of the overall top k hits.
+     * If the search of any shard fails (or the calling thread is interrupted), the failure is thrown once the searches
+     * of all the shards are done with the given searchers.
+     *
+     * @param searchers the searchers of the shards, see {@link #acquire()}
+     * @param search    the search of the top k hits of a shard
+     * @param k         the no. of neighbours whose classes are voted
+     * @param voter     the class voter
+     * @return the classes sorted by descending score
+     */
+    List<ClassificationResult<BytesRef>> vote(IndexSearcher[] searchers, ShardSearch search, int k, ClassVoter voter)
+            throws IOException {
+        if (searchers.length == 1) {
+            IndexReader reader = searchers[0].getIndexReader();
+            return voter.vote(reader, search.search(reader, shards[0].scratch), k);
+        }
+        // shard searches not started yet are skipped on failure, the searchers are released only once all are done
+        AtomicBoolean aborted = new AtomicBoolean();
+        List<Future<ScoreDoc[]>> futures = new ArrayList<>(searchers.length - 1);
+        ScoreDoc[][] shardHits = new ScoreDoc[searchers.length][];
+        try {
+            for (int i = 1; i < searchers.length; i++) {
+                IndexReader reader = searchers[i].getIndexReader();
+                MinHashOverlapScorer.Scratch scratch = shards[i].scratch;
+                futures.add(searchExecutor.submit(() -> aborted.get() ? null : search.search(reader, scratch)));
+            }
+            shardHits[0] = search.search(searchers[0].getIndexReader(), shards[0].scratch);
+            for (int i = 1; i < searchers.length; i++) {
+                shardHits[i] = futures.get(i - 1).get();
+            }
+        } catch (InterruptedException e) {
+            throw new ThreadInterruptedException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } finally {
+            aborted.set(true);
+            Futures.awaitAll(futures);
+        }
+
+        // merge the top hits of all the shards, voting only needs their scores and classes
+        int count = 0;
+        for (ScoreDoc[] hits : shardHits) {
+            count += hits.length;
+        }
+        ScoreDoc[] merged = new ScoreDoc[count];
+        int[] mergedClasses = new int[count];
+        count = 0;
+        for (int i = 0; i < shardHits.length; i++) {
+            int[] classes = voter.classes(searchers[i].getIndexReader(), shardHits[i]);
+            for (int j = 0; j < shardHits[i].length; j++, count++) {
+                merged[count] = shardHits[i][j];
+                mergedClasses[count] = classes[j];
+            }
+        }
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Float.compare(merged[b].score, merged[a].score));
+        int size = Math.min(k, count);
+        ScoreDoc[] hits = new ScoreDoc[size];
+        int[] hitClasses = new int[size];
+        for (int i = 0; i < size; i++) {
+            hits[i] = merged[order[i]];
+            hitClasses[i] = mergedClasses[order[i]];
+        }
+        return voter.vote(hits, hitClasses, k);
+    }
+
+    /**
+     * creates a classifier using the given MinHash parameters, which the sidecar index must have been built with.
+     * Classifiers created this way share this sidecar index, which is not closed when they get closed.
+     */
+    public MinHashClassifier classifier(int min, int hashCount, int hashSize) {
+        return new MinHashClassifier.Builder(min, hashCount, hashSize).build(this);
+    }
+
+    private Shard shard(String id) {
+        return shards[Math.floorMod(id.hashCode(), shards.length)];
+    }
+
+    private Document createDocument(String id, String text, String category) throws IOException {
+        Document document = new Document();
+        document.add(new StringField(ID_FIELD, id, Field.Store.NO));
+        for (String field : analyzers.keySet()) {
+            document.add(new TextField(field, text, Field.Store.NO));
+        }
+        for (Map.Entry<String, SignatureGenerator> entry : signatureGenerators.entrySet()) {
+            String field = entry.getKey();
+            long[] signature = entry.getValue().signature(text);
+            if (signature != null) {
+                if (signatureTermFields.contains(field)) {
+                    BytesRefIterator terms = terms(signature).iterator();
+                    for (BytesRef term = terms.next(); term != null; term = terms.next()) {
+                        document.add(new StringField(field, BytesRef.deepCopyOf(term), Field.Store.NO));
+                    }
+                }
+                if (storeSignatures) {
+                    BytesRef packed = SignatureReranker.pack(signature, signatureBits);
+                    document.add(new BinaryDocValuesField(signatureField(field), packed));
+                }
+            }
+        }
+        document.add(new StringField(CLASS_FIELD, category, Field.Store.NO));
+        document.add(new SortedDocValuesField(CLASS_FIELD, new BytesRef(category)));
+        return document;
+    }
+
+    /**
+     * identifies the contents of a sidecar index shard by its format version, the MinHash fields (and the bits their
+     * signatures are stored with, if any), the sharding and the training examples it is built from
+     *
+     * @return the fingerprint, or {@code null} if the training examples can't be identified
+     */
+    private static String fingerprint(TrainingExamples examples, Set<String> minHashFields, int signatureBits,
+                                      int shard, int shards) {
+        String examplesFingerprint = examples.fingerprint();
+        if (examplesFingerprint == null) {
+            return null;
+        }
+        StringBuilder builder = new StringBuilder();
+        builder.append(FORMAT_VERSION).append('|').append(shard).append('/').append(shards);
+        for (String field : minHashFields) {
+            builder.append('|').append(field);
+            if (signatureBits > 0) {
+                builder.append(":signature");
+                if (signatureBits < Long.SIZE) {
+                    builder.append(signatureBits);
+                }
+            }
+        }
+        return builder.append('|').append(examplesFingerprint).toString();
+    }
+
+    private static Map<String, String> readUserData(Directory directory) throws IOException {
+        if (DirectoryReader.indexExists(directory)) {
+            return SegmentInfos.readLatestCommit(directory).getUserData();
+        } else {
+            return Collections.emptyMap();
+        }
+    }
+
+    /**
+     * adds a training example to the sidecar index, it becomes visible to classification after the next near real
+     * time refresh, see {@link Builder#refreshInterval(long)}, and it is persisted by the next {@link #commit()}
+     *
+     * @param text  the text of the example
+     * @param label the class of the example
+     * @return the id of the added example
+     */
+    public String addExample(String text, String label) throws IOException {
+        String id = UUID.randomUUID().toString();
+        Shard shard = shard(id);
+        shard.writer.addDocument(createDocument(id, text, label));
+        shard.changes.incrementAndGet();
+        return id;
+    }
+
+    /**
+     * removes a training example from the sidecar index, the removal becomes visible to classification after the next
+     * near real time refresh, see {@link Builder#refreshInterval(long)}, and it is persisted by the next
+     * {@link #commit()}
+     *
+     * @param id the id of the example, as returned by {@link #addExample(String, String)}, or the (top level) doc id
+     *           of a doc of the reader the sidecar index was created with
+     */
+    public void removeExample(String id) throws IOException {
+        Shard shard = shard(id);
+        shard.writer.deleteDocuments(new Term(ID_FIELD, id));
+        shard.changes.incrementAndGet();
+    }
+
+    /**
+     * commits the training examples added or removed so far, recording their no. in the commit user data (see
+     * {@link #changes()}), so that a persisted sidecar index doesn't lose them if the process dies before
+     * {@link #close()}; a reused persisted sidecar index keeps its committed changes
+     */
+    public void commit() throws IOException {
+        for (Shard shard : shards) {
+            shard.commit();
+        }
+    }
+
+    /**
+     * refreshes the searchers of all the shards, so that the changes made so far are visible to classification
+     * without waiting for the next near real time refresh
+     */
+    void refresh() throws IOException {
+        for (Shard shard : shards) {
+            shard.searcherManager.maybeRefreshBlocking();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (searchExecutor != null) {
+            searchExecutor.shutdown();
+        }
+        List<Closeable> closeables = new ArrayList<>(Arrays.asList(shards));
+        closeables.add(analyzer);
+        closeables.addAll(analyzers.values());
+        closeables.addAll(signatureGenerators.values());
+        IOUtils.close(closeables);
+    }
+
+    @Override
+    public String toString() {
+        return "MinHashSidecar{" +
+                "fields=" + analyzers.keySet() +
+                (signatureTermFields.isEmpty() ? "" : ", signatureTermFields=" + signatureTermFields) +
+                (shards.length > 1 ? ", shards=" + shards.length : "") +
+                '}';
+    }
+
+    private static final class Shard implements Closeable {
+        private final Directory directory;
+        private final String fingerprint;
+        private final AtomicLong changes = new AtomicLong();
+        private final MinHashOverlapScorer.Scratch scratch = new MinHashOverlapScorer.Scratch();
+        private IndexWriter writer;
+        private SearcherManager searcherManager;
+        private ControlledRealTimeReopenThread<IndexSearcher> reopenThread;
+
+        private Shard(Directory directory, String fingerprint) {
+            this.directory = directory;
+            this.fingerprint = fingerprint;
+        }
+
+        private void commit() throws IOException {
+            Map<String, String> userData = new HashMap<>();
+            if (fingerprint != null) {
+                userData.put(FINGERPRINT, fingerprint);
+            }
+            userData.put(CHANGES, Long.toString(changes.get()));
+            writer.setLiveCommitData(userData.entrySet());
+            writer.commit();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (writer != null && writer.isOpen()) {
+                    commit();
+                }
+            } finally {
+                scratch.clear();
+                IOUtils.close(reopenThread, searcherManager, writer, directory);
+            }
+        }
+    }
+
+    /**
+     * builder for {@link MinHashSidecar}s, by default the sidecar index is kept in memory
+     */
+    public static class Builder {
+
+        private final List<int[]> parameters = new ArrayList<>();
+        private final List<int[]> onePermutations = new ArrayList<>();
+        private Path indexPath;
+        private int threads = Runtime.getRuntime().availableProcessors();
+        private long refreshInterval = 1000;
+        private int shards = 1;
+        private boolean signatures;
+        private int signatureBits = Long.SIZE;
+
+        /**
+         * indexes the signatures created with the given MinHash parameters
+         *
+         * @param min       the size of the word shingles
+         * @param hashCount the no. of hash functions
+         * @param hashSize  the no. of hashes kept per hash function
+         */
+        public Builder add(int min, int hashCount, int hashSize) {
+            parameters.add(new int[]{min, hashCount, hashSize});
+            return this;
+        }
+
+        /**
+         * indexes the one permutation hashing signatures with the given no. of bins as terms, instead of using a
+         * {@link MinHashFilter}, see {@link OnePermutationSignatureGenerator}
+         *
+         * @param min  the size of the word shingles
+         * @param bins the no. of bins
+         */
+        public Builder addOnePermutation(int min, int bins) {
+            onePermutations.add(new int[]{min, bins});
+            return this;
+        }
+
+        /**
+         * persists the sidecar index under the given path, an existing sidecar index is reused as long as it was built
+         * with the same parameters out of the same reader
+         */
+        public Builder indexPath(Path indexPath) {
+            this.indexPath = indexPath;
+            return this;
+        }
+
+        /**
+         * sets the no. of threads used to read and hash the reader's docs, defaults to the no. of available processors
+         */
+        public Builder threads(int threads) {
+            if (threads <= 0) {
+                throw new IllegalArgumentException("threads must be positive");
+            }
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * sets the max interval (in milliseconds) between near real time refreshes of the sidecar index, after which
+         * added or removed training examples are visible to classification, defaults to 1 second
+         */
+        public Builder refreshInterval(long refreshInterval) {
+            if (refreshInterval <= 0) {
+                throw new IllegalArgumentException("refreshInterval must be positive");
+            }
+            this.refreshInterval = refreshInterval;
+            return this;
+        }
+
+        /**
+         * partitions the sidecar index in the given no. of shards, which are searched concurrently by each query,
+         * defaults to 1
+         */
+        public Builder shards(int shards) {
+            if (shards <= 0) {
+                throw new IllegalArgumentException("shards must be positive");
+            }
+            this.shards = shards;
+            return this;
+        }
+
+        /**
+         * also stores the MinHash signature of each doc as packed 64 bits values in binary doc values, so that
+         * candidates can be re-ranked by their estimated Jaccard similarity, see
+         * {@link MinHashClassifier.Builder#rerank(int)}
+         */
+        public Builder signatures(boolean signatures) {
+            this.signatures = signatures;
+            return this;
+        }
+
+        /**
+         * keeps only the lowest bits of each value of the stored signatures, see {@link #signatures(boolean)} and
+         * {@link BBitSignatures}, defaults to 64
+         */
+        public Builder signatureBits(int signatureBits) {
+            BBitSignatures.checkBits(signatureBits);
+            this.signatureBits = signatureBits;
+            return this;
+        }
+
+        public MinHashSidecar build(IndexReader reader, String textField, String categoryField) throws IOException {
+            return build(TrainingExamples.fromReader(reader, textField, categoryField));
+        }
+
+        /**
+         * builds the sidecar index out of the given (text, label) pairs, without requiring a Lucene index of the
+         * training examples; a persisted sidecar index is always rebuilt, as the examples can't be identified
+         */
+        public MinHashSidecar build(Iterator<? extends Map.Entry<String, String>> examples) throws IOException {
+            return build(TrainingExamples.fromIterator(examples));
+        }
+
+        public MinHashSidecar build(TrainingExamples examples) throws IOException {
+            return new MinHashSidecar(this, examples);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.tteofili.looseen;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.core.WhitespaceTokenizerFactory;
+import org.apache.lucene.analysis.custom.CustomAnalyzer;
+import org.apache.lucene.analysis.shingle.ShingleFilterFactory;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+
+/**
+ * generates fixed length MinHash signatures out of the same word shingles used by
+ * {@link MinHashClassifier#createMinHashAnalyzer(int, int, int)}.
+ * Each of the {@code hashCount * hashSetSize} values of a signature is the min value of a distinct hash function over
+ * all the shingles of a text.
+ */
+public class MinHashSignatureGenerator implements SignatureGenerator {
+
+    private static final String FIELD = "text";
+
+    private final Analyzer shingleAnalyzer;
+    private final long[] seeds;
+
+    public MinHashSignatureGenerator(int min, int hashCount, int hashSetSize) throws IOException {
+        this.shingleAnalyzer = createShingleAnalyzer(min);
+        this.seeds = new long[hashCount * hashSetSize];
+        for (int i = 0; i < seeds.length; i++) {
+            seeds[i] = mix(i + 1);
+        }
+    }
+
+    @Override
+    public int length() {
+        return seeds.length;
+    }
+
+    @Override
+    public long[] signature(String text) throws IOException {
+        long[] signature = new long[seeds.length];
+        Arrays.fill(signature, Long.MAX_VALUE);
+        boolean found = false;
+        try (TokenStream ts = shingleAnalyzer.tokenStream(FIELD, text)) {
+            CharTermAttribute termAttribute = ts.addAttribute(CharTermAttribute.class);
+            ts.reset();
+            while (ts.incrementToken()) {
+                long hash = hash(termAttribute.buffer(), termAttribute.length());
+                for (int i = 0; i < seeds.length; i++) {
+                    long value = mix(hash ^ seeds[i]);
+                    if (value < signature[i]) {
+                        signature[i] = value;
+                    }
+                }
+                found = true;
+            }
+            ts.end();
+        }
+        return found ? signature : null;
+    }
+
+    public static Analyzer createShingleAnalyzer(int min) throws IOException {
+        Map<String, String> sffargs = new HashMap<>();
+        sffargs.put("minShingleSize", "" + min);
+        sffargs.put("maxShingleSize", "" + min);
+        sffargs.put("outputUnigrams", "false");
+        sffargs.put("outputUnigramsIfNoShingles", "false");
+        sffargs.put("tokenSeparator", " ");
+        return CustomAnalyzer.builder()
+                .withTokenizer(WhitespaceTokenizerFactory.class)
+                .addTokenFilter(ShingleFilterFactory.class, sffargs)
+                .build();
+    }
+
+    /**
+     * 64 bits FNV-1a hash of the given chars, followed by {@link #mix(long)}
+     */
+    static long hash(char[] buffer, int length) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < length; i++) {
+            hash ^= buffer[i];
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * the finalization step of MurmurHash3 64 bits
+     */
+    static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    @Override
+    public void close() {
+        shingleAnalyzer.close();
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.tteofili.looseen;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.util.ArrayUtil;
+
+/**
+ * a near duplicate detector based on the same MinHash signatures and banded LSH index used by
+ * {@link MinHashClassifier.Builder#lsh(int, int)}.
+ * Texts get sequential ids as they are added, texts having no shingles are assigned an id but never match.
+ * The Jaccard similarity of two texts is estimated by the fraction of signature values they agree on.
+ * The signature generator can be shared with a {@link MinHashClassifier}, see
+ * {@link MinHashClassifier#getSignatureGenerator()}, so that texts which are both deduplicated and classified are
+ * hashed once, see {@link #add(long[])} and {@link #findNearDuplicates(long[], double)}.
+ * Near duplicates found by {@link #deduplicate(Iterator, double)} are grouped in clusters, see {@link #clusters()}.
+ * Adding texts is not thread safe.
+ */
+public final class NearDuplicateDetector implements Closeable {
+
+    private final SignatureGenerator signatureGenerator;
+    private final boolean ownsSignatureGenerator;
+    private final MinHashLSHIndex lshIndex;
+    private int[] ids = new int[16]; // the id of each signature of the LSH index
+    private int[] clusters = new int[16];
+    private int size;
+
+    /**
+     * @param min       the size of the word shingles
+     * @param hashCount the no. of hash functions
+     * @param hashSize  the no. of hashes kept per hash function
+     * @param bands     the no. of LSH bands
+     * @param rows      the no. of signature values per band
+     */
+    public NearDuplicateDetector(int min, int hashCount, int hashSize, int bands, int rows) throws IOException {
+        this(new MinHashSignatureGenerator(min, hashCount, hashSize), true, bands, rows);
+    }
+
+    /**
+     * creates a detector on a shared signature generator, which is not closed when the detector gets closed
+     *
+     * @param signatureGenerator the signature generator, e.g. the one of a {@link MinHashClassifier}
+     * @param bands              the no. of LSH bands
+     * @param rows               the no. of signature values per band
+     */
+    public NearDuplicateDetector(SignatureGenerator signatureGenerator, int bands, int rows) {
+        this(signatureGenerator, false, bands, rows);
+    }
+
+    private NearDuplicateDetector(SignatureGenerator signatureGenerator, boolean ownsSignatureGenerator, int bands,
+                                  int rows) {
+        this.signatureGenerator = signatureGenerator;
+        this.ownsSignatureGenerator = ownsSignatureGenerator;
+        this.lshIndex = new MinHashLSHIndex(signatureGenerator.length(), bands, rows);
+    }
+
+    /**
+     * adds a text to the detector
+     *
+     * @return the id of the added text
+     */
+    public int add(String text) throws IOException {
+        return add(signatureGenerator.signature(text));
+    }
+
+    /**
+     * adds a text by its signature, as generated by the detector's signature generator
+     *
+     * @param signature the signature of the text, or {@code null} for a text having no shingles
+     * @return the id of the added text
+     */
+    public int add(long[] signature) {
+        checkLength(signature);
+        int id = size++;
+        clusters = ArrayUtil.grow(clusters, size);
+        clusters[id] = id;
+        if (signature != null) {
+            int lshId = lshIndex.add(signature, -1);
+            ids = ArrayUtil.grow(ids, lshId + 1);
+            ids[lshId] = id;
+        }
+        return id;
+    }
+
+    /**
+     * @param text             the text to look up
+     * @param jaccardThreshold the min estimated Jaccard similarity of the returned texts
+     * @return the ids of the added texts which are near duplicates of the given one (with their estimated Jaccard
+     * similarity as score), sorted by descending similarity
+     */
+    public ScoreDoc[] findNearDuplicates(String text, double jaccardThreshold) throws IOException {
+        return find(signatureGenerator.signature(text), jaccardThreshold);
+    }
+
+    /**
+     * looks up a text by its signature, as generated by the detector's signature generator
+     *
+     * @see #findNearDuplicates(String, double)
+     */
+    public ScoreDoc[] findNearDuplicates(long[] signature, double jaccardThreshold) {
+        checkLength(signature);
+        return find(signature, jaccardThreshold);
+    }
+
+    private void checkLength(long[] signature) {
+        if (signature != null && signature.length != signatureGenerator.length()) {
+            throw new IllegalArgumentException("signatures must have " + signatureGenerator.length() + " values");
+        }
+    }
+
+    private ScoreDoc[] find(long[] signature, double jaccardThreshold) {
+        if (signature == null) {
+            return new ScoreDoc[0];
+        }
+        ScoreDoc[] hits = lshIndex.searchAbove(signature, (float) jaccardThreshold);
+        for (ScoreDoc hit : hits) {
+            hit.doc = ids[hit.doc];
+        }
+        Arrays.sort(hits, (a, b) -> a.score == b.score ? Integer.compare(a.doc, b.doc)
+                : Float.compare(b.score, a.score));
+        return hits;
+    }
+
+    /**
+     * adds each of the given texts to the detector, emitting the ones which are near duplicates of texts added
+     * before.
+     * Each near duplicate joins the cluster of the most similar text added before it, a cluster is identified by the
+     * id of its first text.
+     *
+     * @param texts            the texts to add, consumed lazily
+     * @param jaccardThreshold the min estimated Jaccard similarity of near duplicates
+     * @return the near duplicates among the given texts, in input order
+     */
+    public Iterator<Duplicate> deduplicate(Iterator<String> texts, double jaccardThreshold) {
+        return new Iterator<Duplicate>() {
+            private Duplicate next;
+
+            @Override
+            public boolean hasNext() {
+                try {
+                    while (next == null && texts.hasNext()) {
+                        next = deduplicate(texts.next(), jaccardThreshold);
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+                return next != null;
+            }
+
+            @Override
+            public Duplicate next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Duplicate duplicate = next;
+                next = null;
+                return duplicate;
+            }
+        };
+    }
+
+    private Duplicate deduplicate(String text, double jaccardThreshold) throws IOException {
+        long[] signature = signatureGenerator.signature(text);
+        ScoreDoc[] hits = find(signature, jaccardThreshold);
+        int id = add(signature);
+        if (hits.length == 0) {
+            return null;
+        }
+        clusters[id] = clusters[hits[0].doc];
+        return new Duplicate(id, clusters[id], hits[0].score);
+    }
+
+    /**
+     * @return the clusters having more than one text, sorted by representative, see
+     * {@link #deduplicate(Iterator, double)}
+     */
+    public List<Cluster> clusters() {
+        int[] counts = new int[size];
+        for (int id = 0; id < size; id++) {
+            counts[clusters[id]]++;
+        }
+        int[][] members = new int[size][];
+        int[] filled = new int[size];
+        List<Cluster> result = new ArrayList<>();
+        for (int id = 0; id < size; id++) {
+            int cluster = clusters[id];
+            if (counts[cluster] > 1) {
+                if (members[cluster] == null) {
+                    // the first text of a cluster is its representative, which is visited first
+                    members[cluster] = new int[counts[cluster]];
+                    result.add(new Cluster(cluster, members[cluster]));
+                }
+                members[cluster][filled[cluster]++] = id;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the no. of added texts
+     */
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void close() {
+        if (ownsSignatureGenerator) {
+            signatureGenerator.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "NearDuplicateDetector{" +
+                "size=" + size +
+                ", lsh=" + lshIndex +
+                '}';
+    }
+
+    /**
+     * a group of near duplicate texts
+     */
+    public static final class Cluster {
+        private final int representative;
+        private final int[] members;
+
+        private Cluster(int representative, int[] members) {
+            this.representative = representative;
+            this.members = members;
+        }
+
+        /**
+         * @return the id of the first text of the cluster
+         */
+        public int getRepresentative() {
+            return representative;
+        }
+
+        /**
+         * @return the ids of all the texts of the cluster, including the representative, in ascending order
+         */
+        public int[] getMembers() {
+            return members.clone();
+        }
+
+        @Override
+        public String toString() {
+            return "Cluster{" +
+                    "representative=" + representative +
+                    ", members=" + Arrays.toString(members) +
+                    '}';
+        }
+    }
+
+    /**
+     * a text found to be a near duplicate of a text added before it
+     */
+    public static final class Duplicate {
+        private final int id;
+        private final int cluster;
+        private final float similarity;
+
+        private Duplicate(int id, int cluster, float similarity) {
+            this.id = id;
+            this.cluster = cluster;
+            this.similarity = similarity;
+        }
+
+        /**
+         * @return the id of the near duplicate text
+         */
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * @return the id of the first text of the near duplicate's cluster
+         */
+        public int getCluster() {
+            return cluster;
+        }
+
+        /**
+         * @return the estimated Jaccard similarity between the near duplicate and the most similar text added before it
+         */
+        public float getSimilarity() {
+            return similarity;
+        }
+
+        @Override
+        public String toString() {
+            return "Duplicate{" +
+                    "id=" + id +
+                    ", cluster=" + cluster +
+                    ", similarity=" + similarity +
+                    '}';
+        }
+    }
+}
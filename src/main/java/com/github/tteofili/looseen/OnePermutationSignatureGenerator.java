@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.tteofili.looseen;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+
+/**
+ * generates one permutation hashing signatures out of the same word shingles used by
+ * {@link MinHashSignatureGenerator}.
+ * Each shingle is hashed once, the hash picks one of the signature's bins and each bin keeps the min of a second hash
+ * of the shingles falling into it; empty bins are densified by rotation, borrowing the value of the closest non empty
+ * bin to their right, offset by the distance between the two bins.
+ */
+public class OnePermutationSignatureGenerator implements SignatureGenerator {
+
+    private static final String FIELD = "text";
+    private static final long SEED = 0x9e3779b97f4a7c15L;
+    private static final long ROTATION_OFFSET = 0xc2b2ae3d27d4eb4fL;
+
+    private final Analyzer shingleAnalyzer;
+    private final int bins;
+
+    /**
+     * @param min  the size of the word shingles
+     * @param bins the no. of bins, that is the length of the signatures
+     */
+    public OnePermutationSignatureGenerator(int min, int bins) throws IOException {
+        this.shingleAnalyzer = MinHashSignatureGenerator.createShingleAnalyzer(min);
+        this.bins = bins;
+    }
+
+    @Override
+    public int length() {
+        return bins;
+    }
+
+    @Override
+    public long[] signature(String text) throws IOException {
+        long[] signature = new long[bins];
+        boolean[] filled = new boolean[bins];
+        int nonEmpty = -1;
+        try (TokenStream ts = shingleAnalyzer.tokenStream(FIELD, text)) {
+            CharTermAttribute termAttribute = ts.addAttribute(CharTermAttribute.class);
+            ts.reset();
+            while (ts.incrementToken()) {
+                long hash = MinHashSignatureGenerator.hash(termAttribute.buffer(), termAttribute.length());
+                int bin = (int) (((hash >>> 32) * bins) >>> 32);
+                long value = MinHashSignatureGenerator.mix(hash ^ SEED);
+                if (!filled[bin] || value < signature[bin]) {
+                    signature[bin] = value;
+                    filled[bin] = true;
+                    nonEmpty = bin;
+                }
+            }
+            ts.end();
+        }
+        if (nonEmpty == -1) {
+            return null;
+        }
+        // walk leftwards from a non empty bin, so that each empty bin is visited after its closest non empty one
+        long borrowed = signature[nonEmpty];
+        long distance = 0;
+        for (int i = 1; i < bins; i++) {
+            int bin = Math.floorMod(nonEmpty - i, bins);
+            if (filled[bin]) {
+                borrowed = signature[bin];
+                distance = 0;
+            } else {
+                distance++;
+                signature[bin] = borrowed + distance * ROTATION_OFFSET;
+            }
+        }
+        return signature;
+    }
+
+    @Override
+    public void close() {
+        shingleAnalyzer.close();
+    }
+
+    @Override
+    public String toString() {
+        return "OnePermutationSignatureGenerator{" +
+                "bins=" + bins +
+                '}';
+    }
+}
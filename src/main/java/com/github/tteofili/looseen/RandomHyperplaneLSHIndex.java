@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.tteofili.looseen;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.PriorityQueue;
+
+/**
+ * an in memory LSH index of dense float vectors, for cosine similarity search.
+ * Vectors are normalized and kept in a contiguous float array; each table hashes a vector to the signs of its
+ * projections on a set of random hyperplanes, vectors whose sign bits match a query's in any table (or differ from
+ * them in a single bit, probing the neighbouring buckets too) are candidates, which are re-ranked by their exact
+ * cosine similarity with the query.
+ * Adding vectors is not thread safe, searching is.
+ */
+public final class RandomHyperplaneLSHIndex implements VectorIndex {
+
+    private final int dimensions;
+    private final int bits;
+    private final float[] hyperplanes;
+    private final BucketTable[] tables;
+    private float[] vectors;
+    private int[] classes;
+    private int size;
+
+    /**
+     * @param dimensions the no. of dimensions of the vectors
+     * @param tables     the no. of hash tables
+     * @param bits       the no. of random hyperplanes per table, at most 64
+     * @param seed       the seed of the random hyperplanes
+     */
+    public RandomHyperplaneLSHIndex(int dimensions, int tables, int bits, long seed) {
+        if (dimensions <= 0 || tables <= 0) {
+            throw new IllegalArgumentException("dimensions and tables must be positive");
+        }
+        if (bits <= 0 || bits > Long.SIZE) {
+            throw new IllegalArgumentException("bits must be between 1 and 64, got " + bits);
+        }
+        this.dimensions = dimensions;
+        this.bits = bits;
+        Random random = new Random(seed);
+        this.hyperplanes = new float[tables * bits * dimensions];
+        for (int i = 0; i < hyperplanes.length; i++) {
+            hyperplanes[i] = (float) random.nextGaussian();
+        }
+        this.tables = new BucketTable[tables];
+        for (int table = 0; table < tables; table++) {
+            this.tables[table] = new BucketTable();
+        }
+        this.vectors = new float[16 * dimensions];
+        this.classes = new int[16];
+    }
+
+    @Override
+    public int add(float[] vector, int classOrdinal) {
+        int doc = size++;
+        vectors = ArrayUtil.grow(vectors, size * dimensions);
+        normalize(vector, vectors, doc * dimensions);
+        classes = ArrayUtil.grow(classes, size);
+        classes[doc] = classOrdinal;
+        for (int table = 0; table < tables.length; table++) {
+            tables[table].add(bucket(vectors, doc * dimensions, table), doc);
+        }
+        return doc;
+    }
+
+    /**
+     * @return the top k candidate vectors, scored by their cosine similarity with the query mapped to [0, 1], sorted
+     * by descending score
+     */
+    @Override
+    public ScoreDoc[] search(float[] vector, int k) {
+        float[] query = new float[dimensions];
+        normalize(vector, query, 0);
+        PriorityQueue<ScoreDoc> queue = new PriorityQueue<ScoreDoc>(k) {
+            @Override
+            protected boolean lessThan(ScoreDoc a, ScoreDoc b) {
+                return a.score == b.score ? a.doc > b.doc : a.score < b.score;
+            }
+        };
+        for (int doc : candidates(query)) {
+            float score = (1f + dot(query, doc)) / 2f;
+            if (queue.size() < k || score > queue.top().score) {
+                queue.insertWithOverflow(new ScoreDoc(doc, score));
+            }
+        }
+        ScoreDoc[] hits = new ScoreDoc[queue.size()];
+        for (int i = hits.length - 1; i >= 0; i--) {
+            hits[i] = queue.pop();
+        }
+        return hits;
+    }
+
+    @Override
+    public int[] classes(ScoreDoc[] hits) {
+        int[] hitClasses = new int[hits.length];
+        for (int i = 0; i < hits.length; i++) {
+            hitClasses[i] = classes[hits[i].doc];
+        }
+        return hitClasses;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public String toString() {
+        return tables.length + "x" + bits;
+    }
+
+    /**
+     * @return the sorted ids of the distinct vectors falling in the buckets of the given query, or in the buckets
+     * whose keys differ from them in a single bit
+     */
+    private int[] candidates(float[] query) {
+        int[] candidates = new int[16];
+        int count = 0;
+        for (int t = 0; t < tables.length; t++) {
+            BucketTable table = tables[t];
+            long bucket = bucket(query, 0, t);
+            for (int flip = -1; flip < bits; flip++) {
+                long key = flip == -1 ? bucket : bucket ^ (1L << flip);
+                for (int doc = table.head(key); doc != -1; doc = table.next(doc)) {
+                    candidates = ArrayUtil.grow(candidates, count + 1);
+                    candidates[count++] = doc;
+                }
+            }
+        }
+        Arrays.sort(candidates, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || candidates[i - 1] != candidates[i]) {
+                candidates[distinct++] = candidates[i];
+            }
+        }
+        return Arrays.copyOf(candidates, distinct);
+    }
+
+    /**
+     * @return the sign bits of the projections of the given vector on the hyperplanes of the given table
+     */
+    private long bucket(float[] vector, int offset, int table) {
+        long bucket = 0;
+        for (int bit = 0, h = table * bits * dimensions; bit < bits; bit++, h += dimensions) {
+            float projection = 0;
+            for (int i = 0; i < dimensions; i++) {
+                projection += hyperplanes[h + i] * vector[offset + i];
+            }
+            if (projection > 0) {
+                bucket |= 1L << bit;
+            }
+        }
+        return bucket;
+    }
+
+    private float dot(float[] query, int doc) {
+        float dot = 0;
+        for (int i = 0, offset = doc * dimensions; i < dimensions; i++) {
+            dot += query[i] * vectors[offset + i];
+        }
+        return dot;
+    }
+
+    /**
+     * copies the given vector, scaled to unit length, into the given array at the given offset
+     */
+    private void normalize(float[] vector, float[] dest, int offset) {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("expected " + dimensions + " dimensions, got " + vector.length);
+        }
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        float scale = norm > 0 ? (float) (1 / Math.sqrt(norm)) : 0;
+        for (int i = 0; i < dimensions; i++) {
+            dest[offset + i] = vector[i] * scale;
+        }
+    }
+}
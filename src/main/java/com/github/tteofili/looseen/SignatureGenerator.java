@@ -0,0 +1,41 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.tteofili.looseen;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * generates fixed length signatures of texts, such that the fraction of values two signatures agree on estimates the
+ * Jaccard similarity of the word shingles of their texts
+ */
+public interface SignatureGenerator extends Closeable {
+
+    /**
+     * @return the no. of values in each signature
+     */
+    int length();
+
+    /**
+     * @param text the text to hash
+     * @return the signature of the given text, or {@code null} if the text has no shingles
+     */
+    long[] signature(String text) throws IOException;
+
+    @Override
+    void close();
+}
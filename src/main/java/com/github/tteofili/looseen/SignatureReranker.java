@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.tteofili.looseen;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.PriorityQueue;
+
+/**
+ * re-ranks candidate docs by the Jaccard similarity estimated from their MinHash signatures, stored as packed 64 bits
+ * values in binary doc values, see {@link #pack(long[])}, or as b-bit values, see {@link #pack(long[], int)}.
+ */
+public final class SignatureReranker {
+
+    private SignatureReranker() {
+    }
+
+    /**
+     * packs the given signature in big endian order, 8 bytes per value
+     */
+    public static BytesRef pack(long[] signature) {
+        byte[] bytes = new byte[signature.length * Long.BYTES];
+        for (int i = 0, offset = 0; i < signature.length; i++) {
+            long value = signature[i];
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                bytes[offset++] = (byte) (value >>> shift);
+            }
+        }
+        return new BytesRef(bytes);
+    }
+
+    /**
+     * packs the lowest bits of each value of the given signature, see {@link BBitSignatures#pack(long[], int)}, in big
+     * endian words
+     */
+    public static BytesRef pack(long[] signature, int bits) {
+        return pack(BBitSignatures.pack(signature, bits));
+    }
+
+    /**
+     * @param reader     the reader the candidates come from
+     * @param field      the binary doc values field holding the packed signatures
+     * @param signature  the signature of the query
+     * @param candidates the candidate docs
+     * @param k          the max no. of docs to return
+     * @return the top k candidates sorted by descending estimated Jaccard similarity with the query
+     */
+    public static ScoreDoc[] rerank(IndexReader reader, String field, long[] signature, ScoreDoc[] candidates, int k)
+            throws IOException {
+        return rerank(reader, field, signature, candidates, k, Long.SIZE);
+    }
+
+    /**
+     * @param reader     the reader the candidates come from
+     * @param field      the binary doc values field holding the packed b-bit signatures
+     * @param signature  the signature of the query
+     * @param candidates the candidate docs
+     * @param k          the max no. of docs to return
+     * @param bits       the no. of bits each signature value was packed with, see {@link #pack(long[], int)}
+     * @return the top k candidates sorted by descending estimated Jaccard similarity with the query, corrected for
+     * random collisions of b-bit values
+     */
+    public static ScoreDoc[] rerank(IndexReader reader, String field, long[] signature, ScoreDoc[] candidates, int k,
+                                    int bits) throws IOException {
+        long[] query = BBitSignatures.pack(signature, bits);
+        long[] words = new long[query.length];
+        ScoreDoc[] sorted = candidates.clone();
+        Arrays.sort(sorted, (a, b) -> Integer.compare(a.doc, b.doc)); // doc values have to be visited in doc id order
+        PriorityQueue<ScoreDoc> queue = new PriorityQueue<ScoreDoc>(k) {
+            @Override
+            protected boolean lessThan(ScoreDoc a, ScoreDoc b) {
+                return a.score == b.score ? a.doc > b.doc : a.score < b.score;
+            }
+        };
+        List<LeafReaderContext> leaves = reader.leaves();
+        LeafReaderContext leaf = null;
+        BinaryDocValues values = null;
+        for (ScoreDoc candidate : sorted) {
+            int doc = candidate.doc;
+            if (leaf == null || doc >= leaf.docBase + leaf.reader().maxDoc()) {
+                leaf = leaves.get(ReaderUtil.subIndex(doc, leaves));
+                values = DocValues.getBinary(leaf.reader(), field);
+            }
+            float score = 0;
+            if (values.advanceExact(doc - leaf.docBase)) {
+                int agreement = BBitSignatures.agreement(query, 0, unpack(values.binaryValue(), words), 0,
+                        signature.length, bits);
+                score = BBitSignatures.similarity(agreement, signature.length, bits);
+            }
+            if (queue.size() < k || score > queue.top().score) {
+                queue.insertWithOverflow(new ScoreDoc(doc, score));
+            }
+        }
+        ScoreDoc[] hits = new ScoreDoc[queue.size()];
+        for (int i = hits.length - 1; i >= 0; i--) {
+            hits[i] = queue.pop();
+        }
+        return hits;
+    }
+
+    /**
+     * @return the no. of values the given signature agrees on with the given packed one
+     */
+    static int agreement(long[] signature, BytesRef packed) {
+        return BBitSignatures.agreement(signature, 0, unpack(packed, new long[signature.length]), 0,
+                signature.length, Long.SIZE);
+    }
+
+    /**
+     * decodes the big endian words of the given packed signature into the given array
+     */
+    private static long[] unpack(BytesRef packed, long[] words) {
+        byte[] bytes = packed.bytes;
+        for (int i = 0, offset = packed.offset; i < words.length; i++, offset += Long.BYTES) {
+            words[i] = (bytes[offset] & 0xFFL) << 56 | (bytes[offset + 1] & 0xFFL) << 48
+                    | (bytes[offset + 2] & 0xFFL) << 40 | (bytes[offset + 3] & 0xFFL) << 32
+                    | (bytes[offset + 4] & 0xFFL) << 24 | (bytes[offset + 5] & 0xFFL) << 16
+                    | (bytes[offset + 6] & 0xFFL) << 8 | (bytes[offset + 7] & 0xFFL);
+        }
+        return words;
+    }
+}
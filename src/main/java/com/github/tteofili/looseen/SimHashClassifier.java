@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.tteofili.looseen;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.classification.ClassificationResult;
+import org.apache.lucene.classification.Classifier;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * a k nearest neighbours classifier fingerprinting each training example into a 64 or 128 bits SimHash of its word
+ * shingles, see {@link SimHashGenerator}.
+ * Fingerprints are kept in an in memory {@link SimHashIndex}, neighbours are the examples within a max Hamming
+ * distance of the text to classify and their classes are voted the same way {@link MinHashClassifier} does.
+ */
+public class SimHashClassifier implements Classifier<BytesRef>, Closeable {
+
+    private static final int DEFAULT_K = 3;
+    private final int min;
+    private final int k;
+    private final ClassVoter classVoter = new ClassVoter(MinHashSidecar.CLASS_FIELD);
+    private final SimHashGenerator generator;
+    private final SimHashIndex index;
+
+    /**
+     * @param min         the size of the word shingles
+     * @param bits        the no. of bits of the fingerprints, either 64 or 128
+     * @param maxDistance the max Hamming distance of the neighbours
+     */
+    public SimHashClassifier(IndexReader reader, String textField, String categoryField, int min, int bits,
+                             int maxDistance) {
+        this(new Builder(min, bits).maxDistance(maxDistance),
+                TrainingExamples.fromReader(reader, textField, categoryField));
+    }
+
+    private SimHashClassifier(Builder builder, TrainingExamples examples) {
+        this.min = builder.min;
+        this.k = builder.k;
+        index = new SimHashIndex(builder.bits, builder.maxDistance);
+        try {
+            generator = new SimHashGenerator(min, builder.bits);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        boolean success = false;
+        try {
+            examples.visit(builder.threads, (id, text, label) -> {
+                long[] fingerprint = generator.fingerprint(text);
+                if (fingerprint != null) {
+                    int classOrdinal = classVoter.ordinal(new BytesRef(label));
+                    synchronized (index) {
+                        index.add(fingerprint, classOrdinal);
+                    }
+                }
+            });
+            success = true;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            if (!success) {
+                // the caller never gets a classifier to close
+                generator.close();
+            }
+        }
+    }
+
+    @Override
+    public ClassificationResult<BytesRef> assignClass(String text) throws IOException {
+        List<ClassificationResult<BytesRef>> classes = classify(text);
+        return classes.isEmpty() ? null : classes.get(0);
+    }
+
+    @Override
+    public List<ClassificationResult<BytesRef>> getClasses(String text) throws IOException {
+        return classify(text);
+    }
+
+    @Override
+    public List<ClassificationResult<BytesRef>> getClasses(String text, int max) throws IOException {
+        List<ClassificationResult<BytesRef>> classes = classify(text);
+        return new ArrayList<>(classes.subList(0, Math.min(max, classes.size())));
+    }
+
+    private List<ClassificationResult<BytesRef>> classify(String text) throws IOException {
+        long[] fingerprint = generator.fingerprint(text);
+        if (fingerprint == null) {
+            return Collections.emptyList();
+        }
+        ScoreDoc[] hits = index.search(fingerprint, k);
+        return classVoter.vote(hits, index.classes(hits), k);
+    }
+
+    @Override
+    public void close() {
+        generator.close();
+    }
+
+    @Override
+    public String toString() {
+        return "SimHashClassifier{" +
+                "min=" + min +
+                (k != DEFAULT_K ? ", k=" + k : "") +
+                ", index=" + index +
+                '}';
+    }
+
+    /**
+     * builder for {@link SimHashClassifier}s
+     */
+    public static class Builder {
+
+        private final int min;
+        private final int bits;
+        private int maxDistance = 3;
+        private int threads = Runtime.getRuntime().availableProcessors();
+        private int k = DEFAULT_K;
+
+        /**
+         * @param min  the size of the word shingles
+         * @param bits the no. of bits of the fingerprints, either 64 or 128
+         */
+        public Builder(int min, int bits) {
+            this.min = min;
+            this.bits = bits;
+        }
+
+        /**
+         * sets the max Hamming distance of the neighbours, defaults to 3; the index keeps a table for each of
+         * {@code maxDistance + 1} blocks of bits, so larger distances find more neighbours at the cost of more memory
+         * and less selective tables
+         */
+        public Builder maxDistance(int maxDistance) {
+            if (maxDistance < 0) {
+                throw new IllegalArgumentException("maxDistance must not be negative");
+            }
+            this.maxDistance = maxDistance;
+            return this;
+        }
+
+        /**
+         * sets the no. of threads used to read and hash the training examples, defaults to the no. of available
+         * processors
+         */
+        public Builder threads(int threads) {
+            if (threads <= 0) {
+                throw new IllegalArgumentException("threads must be positive");
+            }
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * sets the no. of nearest neighbours whose classes are voted, defaults to 3
+         */
+        public Builder k(int k) {
+            if (k <= 0) {
+                throw new IllegalArgumentException("k must be positive");
+            }
+            this.k = k;
+            return this;
+        }
+
+        public SimHashClassifier build(IndexReader reader, String textField, String categoryField) {
+            return build(TrainingExamples.fromReader(reader, textField, categoryField));
+        }
+
+        /**
+         * builds a classifier out of the given (text, label) pairs, see {@link TrainingExamples#fromIterator(Iterator)}
+         */
+        public SimHashClassifier build(Iterator<? extends Map.Entry<String, String>> examples) {
+            return build(TrainingExamples.fromIterator(examples));
+        }
+
+        public SimHashClassifier build(TrainingExamples examples) {
+            return new SimHashClassifier(this, examples);
+        }
+    }
+}
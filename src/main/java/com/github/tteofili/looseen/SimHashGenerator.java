@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.tteofili.looseen;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+
+/**
+ * generates 64 or 128 bits SimHash fingerprints out of the same word shingles used by
+ * {@link MinHashSignatureGenerator}.
+ * Each shingle is hashed to as many bits as the fingerprint, each bit of the fingerprint is set iff the majority of
+ * the shingles have that bit set, so that the Hamming distance of two fingerprints estimates the angle between the
+ * shingle vectors of their texts.
+ */
+public class SimHashGenerator implements Closeable {
+
+    private static final String FIELD = "text";
+    private static final long SEED = 0x9e3779b97f4a7c15L;
+
+    private final Analyzer shingleAnalyzer;
+    private final int bits;
+
+    /**
+     * @param min  the size of the word shingles
+     * @param bits the no. of bits of the fingerprints, either 64 or 128
+     */
+    public SimHashGenerator(int min, int bits) throws IOException {
+        if (bits != 64 && bits != 128) {
+            throw new IllegalArgumentException("bits must be either 64 or 128, got " + bits);
+        }
+        this.shingleAnalyzer = MinHashSignatureGenerator.createShingleAnalyzer(min);
+        this.bits = bits;
+    }
+
+    /**
+     * @return the no. of bits of the fingerprints
+     */
+    public int bits() {
+        return bits;
+    }
+
+    /**
+     * @param text the text to hash
+     * @return the fingerprint of the given text as {@code bits / 64} words, or {@code null} if the text has no shingles
+     */
+    public long[] fingerprint(String text) throws IOException {
+        int[] counts = new int[bits];
+        boolean found = false;
+        try (TokenStream ts = shingleAnalyzer.tokenStream(FIELD, text)) {
+            CharTermAttribute termAttribute = ts.addAttribute(CharTermAttribute.class);
+            ts.reset();
+            while (ts.incrementToken()) {
+                long hash = MinHashSignatureGenerator.hash(termAttribute.buffer(), termAttribute.length());
+                count(counts, 0, hash);
+                if (bits > Long.SIZE) {
+                    count(counts, Long.SIZE, MinHashSignatureGenerator.mix(hash ^ SEED));
+                }
+                found = true;
+            }
+            ts.end();
+        }
+        if (!found) {
+            return null;
+        }
+        long[] fingerprint = new long[bits / Long.SIZE];
+        for (int i = 0; i < bits; i++) {
+            if (counts[i] > 0) {
+                fingerprint[i >>> 6] |= 1L << (i & 63);
+            }
+        }
+        return fingerprint;
+    }
+
+    /**
+     * votes +1 for each set bit of the given hash and -1 for each unset one
+     */
+    private static void count(int[] counts, int offset, long hash) {
+        for (int i = 0; i < Long.SIZE; i++) {
+            counts[offset + i] += (int) ((hash >>> i) & 1) * 2 - 1;
+        }
+    }
+
+    @Override
+    public void close() {
+        shingleAnalyzer.close();
+    }
+
+    @Override
+    public String toString() {
+        return "SimHashGenerator{" +
+                "bits=" + bits +
+                '}';
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.tteofili.looseen;
+
+import java.util.Arrays;
+
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.PriorityQueue;
+
+/**
+ * an in memory multi-index of SimHash fingerprints, finding all the fingerprints within a max Hamming distance
+ * {@code d} of a query.
+ * Fingerprints are split in {@code d + 1} blocks of contiguous bits, each block is hashed into its own
+ * {@link BucketTable}: fingerprints within distance {@code d} differ in at most {@code d} blocks, so they match the
+ * query exactly in at least one block, which is the same pigeonhole argument behind the permuted tables of Manku et
+ * al.; candidates are then verified and ranked by their Hamming distance.
+ * Adding fingerprints is not thread safe, searching is.
+ */
+public final class SimHashIndex {
+
+    private final int bits;
+    private final int words;
+    private final int maxDistance;
+    private final int[] blockStarts;
+    private final BucketTable[] tables;
+    private long[] fingerprints;
+    private int[] classes;
+    private int size;
+
+    /**
+     * @param bits        the no. of bits of the fingerprints, a multiple of 64
+     * @param maxDistance the max Hamming distance of the fingerprints returned by searches
+     */
+    public SimHashIndex(int bits, int maxDistance) {
+        if (bits <= 0 || bits % Long.SIZE != 0) {
+            throw new IllegalArgumentException("bits must be a positive multiple of 64, got " + bits);
+        }
+        if (maxDistance < 0 || maxDistance >= bits) {
+            throw new IllegalArgumentException("maxDistance must be between 0 and " + (bits - 1));
+        }
+        this.bits = bits;
+        this.words = bits / Long.SIZE;
+        this.maxDistance = maxDistance;
+        int blocks = maxDistance + 1;
+        this.blockStarts = new int[blocks + 1];
+        for (int block = 0; block <= blocks; block++) {
+            blockStarts[block] = block * bits / blocks;
+        }
+        this.tables = new BucketTable[blocks];
+        for (int block = 0; block < blocks; block++) {
+            tables[block] = new BucketTable();
+        }
+        this.fingerprints = new long[16 * words];
+        this.classes = new int[16];
+    }
+
+    /**
+     * adds a fingerprint
+     *
+     * @param fingerprint  the fingerprint
+     * @param classOrdinal the ordinal of the class of the fingerprint
+     * @return the id of the added fingerprint
+     */
+    public int add(long[] fingerprint, int classOrdinal) {
+        int doc = size++;
+        fingerprints = ArrayUtil.grow(fingerprints, size * words);
+        System.arraycopy(fingerprint, 0, fingerprints, doc * words, words);
+        classes = ArrayUtil.grow(classes, size);
+        classes[doc] = classOrdinal;
+        for (int block = 0; block < tables.length; block++) {
+            tables[block].add(blockKey(fingerprint, block), doc);
+        }
+        return doc;
+    }
+
+    /**
+     * @param fingerprint the fingerprint of the query
+     * @param k           the max no. of fingerprints to return
+     * @return the top k fingerprints within the max Hamming distance of the query, scored by the fraction of bits they
+     * agree on, sorted by descending score
+     */
+    public ScoreDoc[] search(long[] fingerprint, int k) {
+        PriorityQueue<ScoreDoc> queue = new PriorityQueue<ScoreDoc>(k) {
+            @Override
+            protected boolean lessThan(ScoreDoc a, ScoreDoc b) {
+                return a.score == b.score ? a.doc > b.doc : a.score < b.score;
+            }
+        };
+        for (int doc : candidates(fingerprint)) {
+            int distance = distance(fingerprint, doc);
+            if (distance <= maxDistance) {
+                float score = 1f - distance / (float) bits;
+                if (queue.size() < k || score > queue.top().score) {
+                    queue.insertWithOverflow(new ScoreDoc(doc, score));
+                }
+            }
+        }
+        ScoreDoc[] hits = new ScoreDoc[queue.size()];
+        for (int i = hits.length - 1; i >= 0; i--) {
+            hits[i] = queue.pop();
+        }
+        return hits;
+    }
+
+    /**
+     * @return the class ordinals of the given hits
+     */
+    public int[] classes(ScoreDoc[] hits) {
+        int[] hitClasses = new int[hits.length];
+        for (int i = 0; i < hits.length; i++) {
+            hitClasses[i] = classes[hits[i].doc];
+        }
+        return hitClasses;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return bits + "bits@" + maxDistance;
+    }
+
+    /**
+     * @return the sorted ids of the distinct fingerprints matching the given one in at least one block
+     */
+    private int[] candidates(long[] fingerprint) {
+        int[] candidates = new int[16];
+        int count = 0;
+        for (int block = 0; block < tables.length; block++) {
+            BucketTable table = tables[block];
+            for (int doc = table.head(blockKey(fingerprint, block)); doc != -1; doc = table.next(doc)) {
+                candidates = ArrayUtil.grow(candidates, count + 1);
+                candidates[count++] = doc;
+            }
+        }
+        Arrays.sort(candidates, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || candidates[i - 1] != candidates[i]) {
+                candidates[distinct++] = candidates[i];
+            }
+        }
+        return Arrays.copyOf(candidates, distinct);
+    }
+
+    private int distance(long[] fingerprint, int doc) {
+        int distance = 0;
+        for (int i = 0, offset = doc * words; i < words; i++) {
+            distance += Long.bitCount(fingerprint[i] ^ fingerprints[offset + i]);
+        }
+        return distance;
+    }
+
+    /**
+     * hashes the bits of the given block of the given fingerprint
+     */
+    private long blockKey(long[] fingerprint, int block) {
+        int start = blockStarts[block];
+        int end = blockStarts[block + 1];
+        long key = block;
+        for (int word = start >>> 6; word << 6 < end; word++) {
+            int from = Math.max(start - (word << 6), 0);
+            int to = Math.min(end - (word << 6), Long.SIZE);
+            long value = fingerprint[word] >>> from;
+            if (to - from < Long.SIZE) {
+                value &= (1L << (to - from)) - 1;
+            }
+            key = MinHashSignatureGenerator.mix(key ^ value);
+        }
+        return key;
+    }
+}
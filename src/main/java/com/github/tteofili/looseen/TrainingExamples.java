@@ -0,0 +1,309 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.tteofili.looseen;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.util.StringHelper;
+import org.apache.lucene.util.ThreadInterruptedException;
+
+/**
+ * a source of (text, label) training examples, either the stored fields of the live docs of a reader or an iterator
+ * of examples coming from anywhere else (files, queues, etc.).
+ * Examples are visited by a fixed no. of threads.
+ */
+public abstract class TrainingExamples {
+
+    private static final int QUEUE_SIZE_PER_THREAD = 64;
+
+    private TrainingExamples() {
+    }
+
+    /**
+     * a visitor of training examples, called concurrently by the visiting threads
+     */
+    public interface Visitor {
+        /**
+         * @param id    the id of the example
+         * @param text  the text of the example
+         * @param label the class of the example
+         */
+        void visit(String id, String text, String label) throws IOException;
+    }
+
+    /**
+     * @param threads the no. of visiting threads
+     * @param visitor the visitor
+     */
+    abstract void visit(int threads, Visitor visitor) throws IOException;
+
+    /**
+     * @return a string identifying the contents of this source, or {@code null} if they can't be identified; indexes
+     * built out of the examples can be reused as long as the fingerprint doesn't change
+     */
+    public abstract String fingerprint();
+
+    /**
+     * examples read from the stored fields of the live docs of the given reader, ids are the (top level) doc ids
+     */
+    public static TrainingExamples fromReader(IndexReader reader, String textField, String categoryField) {
+        return new ReaderExamples(reader, textField, categoryField);
+    }
+
+    /**
+     * examples pulled from the given iterator of (text, label) pairs, ids are the positions of the examples.
+     * The iterator is consumed by the calling thread and handed to the visiting threads through a bounded queue, so
+     * that at most a few examples per thread are buffered and a slow visitor holds back the iterator.
+     * The returned examples can only be visited once.
+     */
+    public static TrainingExamples fromIterator(Iterator<? extends Map.Entry<String, String>> examples) {
+        return new IteratorExamples(examples);
+    }
+
+    /**
+     * condenses the given examples while they are visited: an example is dropped if a kept example of the same class
+     * has an estimated Jaccard similarity of at least the given threshold with it, so that near duplicates within a
+     * class are visited once, while examples close to examples of other classes are kept as class boundaries.
+     * Kept examples are looked up through an in memory {@link MinHashLSHIndex}, which only lives while visiting.
+     * With more than one visiting thread, which of two near duplicates is kept depends on the order they are visited
+     * in, so the condensed examples can differ between builds even though their fingerprint is the same; visit them
+     * with a single thread for reproducible results.
+     *
+     * @param examples           the examples to condense
+     * @param signatureGenerator the generator of the signatures examples are compared by
+     * @param jaccardThreshold   the min estimated Jaccard similarity of a dropped example with a kept one
+     */
+    public static CondensedExamples condense(TrainingExamples examples, SignatureGenerator signatureGenerator,
+                                             double jaccardThreshold) {
+        return new CondensedExamples(examples, signatureGenerator, jaccardThreshold);
+    }
+
+    private static final class ReaderExamples extends TrainingExamples {
+        private final IndexReader reader;
+        private final String textField;
+        private final String categoryField;
+
+        private ReaderExamples(IndexReader reader, String textField, String categoryField) {
+            this.reader = reader;
+            this.textField = textField;
+            this.categoryField = categoryField;
+        }
+
+        @Override
+        void visit(int threads, Visitor visitor) throws IOException {
+            Set<String> fields = new HashSet<>(Arrays.asList(textField, categoryField));
+            LiveDocsVisitor.visit(reader, fields, threads, (docId, d) -> visitor.visit(String.valueOf(docId),
+                    d.getField(textField).stringValue(), d.getField(categoryField).stringValue()));
+        }
+
+        /**
+         * identifies the examples by the fields and the segments (and deletions) of the reader
+         */
+        @Override
+        public String fingerprint() {
+            StringBuilder builder = new StringBuilder();
+            builder.append(textField).append('|').append(categoryField);
+            for (LeafReaderContext context : reader.leaves()) {
+                builder.append('|');
+                if (context.reader() instanceof SegmentReader) {
+                    SegmentReader segmentReader = (SegmentReader) context.reader();
+                    builder.append(StringHelper.idToString(segmentReader.getSegmentInfo().info.getId())).append(':')
+                            .append(segmentReader.getSegmentInfo().getDelGen()).append(':');
+                }
+                builder.append(context.reader().maxDoc()).append(':').append(context.reader().numDocs());
+            }
+            return builder.toString();
+        }
+    }
+
+    private static final class IteratorExamples extends TrainingExamples {
+        private static final String[] END = new String[0];
+
+        private final Iterator<? extends Map.Entry<String, String>> examples;
+
+        private IteratorExamples(Iterator<? extends Map.Entry<String, String>> examples) {
+            this.examples = examples;
+        }
+
+        @Override
+        void visit(int threads, Visitor visitor) throws IOException {
+            BlockingQueue<String[]> queue = new ArrayBlockingQueue<>(threads * QUEUE_SIZE_PER_THREAD);
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<?>> futures = new ArrayList<>(threads);
+                for (int t = 0; t < threads; t++) {
+                    futures.add(executor.submit(() -> {
+                        for (String[] example = queue.take(); example != END; example = queue.take()) {
+                            visitor.visit(example[0], example[1], example[2]);
+                        }
+                        return null;
+                    }));
+                }
+                for (int id = 0; examples.hasNext(); id++) {
+                    Map.Entry<String, String> example = examples.next();
+                    put(queue, new String[]{String.valueOf(id), example.getKey(), example.getValue()}, futures);
+                }
+                for (int t = 0; t < threads; t++) {
+                    put(queue, END, futures);
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                throw new ThreadInterruptedException(e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new RuntimeException(e.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        /**
+         * waits for room in the queue, unless any of the visiting threads failed
+         */
+        private static void put(BlockingQueue<String[]> queue, String[] example, List<Future<?>> futures)
+                throws InterruptedException, ExecutionException {
+            while (!queue.offer(example, 100, TimeUnit.MILLISECONDS)) {
+                for (Future<?> future : futures) {
+                    if (future.isDone()) {
+                        future.get();
+                    }
+                }
+            }
+        }
+
+        @Override
+        public String fingerprint() {
+            return null;
+        }
+    }
+
+    /**
+     * training examples condensed by dropping near duplicates of the same class, see
+     * {@link TrainingExamples#condense(TrainingExamples, SignatureGenerator, double)}
+     */
+    public static final class CondensedExamples extends TrainingExamples {
+        private final TrainingExamples examples;
+        private final SignatureGenerator signatureGenerator;
+        private final double jaccardThreshold;
+        private final AtomicInteger visited = new AtomicInteger();
+        private final AtomicInteger kept = new AtomicInteger();
+        private volatile boolean condensed;
+
+        private CondensedExamples(TrainingExamples examples, SignatureGenerator signatureGenerator,
+                                  double jaccardThreshold) {
+            if (jaccardThreshold <= 0 || jaccardThreshold > 1) {
+                throw new IllegalArgumentException("jaccardThreshold must be in (0, 1], got " + jaccardThreshold);
+            }
+            this.examples = examples;
+            this.signatureGenerator = signatureGenerator;
+            this.jaccardThreshold = jaccardThreshold;
+        }
+
+        @Override
+        void visit(int threads, Visitor visitor) throws IOException {
+            int length = signatureGenerator.length();
+            int rows = rows(length, jaccardThreshold);
+            MinHashLSHIndex index = new MinHashLSHIndex(length, length / rows, rows);
+            Map<String, Integer> classes = new HashMap<>();
+            condensed = true;
+            examples.visit(threads, (id, text, label) -> {
+                visited.incrementAndGet();
+                // signatures are computed concurrently, while examples are kept one at a time
+                long[] signature = signatureGenerator.signature(text);
+                if (signature != null) {
+                    synchronized (index) {
+                        int classOrdinal = classes.computeIfAbsent(label, l -> classes.size());
+                        ScoreDoc[] hits = index.searchAbove(signature, (float) jaccardThreshold);
+                        for (int hitClass : index.classes(hits)) {
+                            if (hitClass == classOrdinal) {
+                                return;
+                            }
+                        }
+                        index.add(signature, classOrdinal);
+                    }
+                }
+                kept.incrementAndGet();
+                visitor.visit(id, text, label);
+            });
+        }
+
+        /**
+         * @return the largest no. of rows per band whose LSH threshold {@code (1 / bands) ^ (1 / rows)} does not
+         * exceed the given Jaccard threshold, so that most of the near duplicates collide in at least one band
+         */
+        private static int rows(int length, double jaccardThreshold) {
+            int rows = 1;
+            for (int r = 2; r <= length; r++) {
+                if (Math.pow(1d / (length / r), 1d / r) > jaccardThreshold) {
+                    break;
+                }
+                rows = r;
+            }
+            return rows;
+        }
+
+        @Override
+        public String fingerprint() {
+            String fingerprint = examples.fingerprint();
+            return fingerprint != null ? fingerprint + "|condensed:" + jaccardThreshold : null;
+        }
+
+        /**
+         * @return the no. of examples visited so far, or -1 if they were never visited, e.g. because a persisted
+         * sidecar index built out of them was reused
+         */
+        public int getVisited() {
+            return condensed ? visited.get() : -1;
+        }
+
+        /**
+         * @return the no. of examples kept so far, or -1 if they were never visited, see {@link #getVisited()}
+         */
+        public int getKept() {
+            return condensed ? kept.get() : -1;
+        }
+
+        @Override
+        public String toString() {
+            return condensed ? kept + "/" + visited : "unknown";
+        }
+    }
+}
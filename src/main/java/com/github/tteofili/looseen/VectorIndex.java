@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.tteofili.looseen;
+
+import java.io.Closeable;
+
+import org.apache.lucene.search.ScoreDoc;
+
+/**
+ * an index of dense float vectors, searched by cosine similarity; vectors are held either on or off heap, or memory
+ * mapped from a file the index was persisted to, depending on the implementation.
+ * Scores are cosine similarities mapped to [0, 1], so that they can be voted by {@link ClassVoter}.
+ * Searching is thread safe, while adding vectors is thread safe only for implementations supporting concurrent adds,
+ * see {@link #supportsConcurrentAdds()}: for the other ones, adds have to be serialized by the caller.
+ */
+public interface VectorIndex extends Closeable {
+
+    /**
+     * adds a vector
+     *
+     * @param vector       the vector
+     * @param classOrdinal the ordinal of the class of the vector
+     * @return the id of the added vector
+     */
+    int add(float[] vector, int classOrdinal);
+
+    /**
+     * @param vector the query vector
+     * @param k      the max no. of vectors to return
+     * @return the (approximate) top k vectors, sorted by descending score
+     */
+    ScoreDoc[] search(float[] vector, int k);
+
+    /**
+     * @return the class ordinals of the given hits
+     */
+    int[] classes(ScoreDoc[] hits);
+
+    /**
+     * @return the no. of added vectors
+     */
+    int size();
+
+    /**
+     * @return whether vectors can be added by concurrent threads (and concurrently with searches) without any
+     * external synchronization, {@code false} by default
+     */
+    default boolean supportsConcurrentAdds() {
+        return false;
+    }
+
+    @Override
+    void close();
+}
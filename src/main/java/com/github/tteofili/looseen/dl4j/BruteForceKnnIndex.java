@@ -0,0 +1,218 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.tteofili.looseen.dl4j;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.github.tteofili.looseen.VectorIndex;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.ThreadInterruptedException;
+
+/**
+ * an exact k nearest neighbours index of dense float vectors, by cosine similarity.
+ * Vectors are normalized and kept in a single off heap row major float buffer, queries scan all of it: the rows are
+ * partitioned among a fixed no. of threads, each thread copies blocks of rows on heap and scores them against all the
+ * queries of a batch, keeping a bounded heap per query, heaps of all the threads are then merged.
+ * Useful as a ground truth for approximate {@link VectorIndex}es.
+ */
+public final class BruteForceKnnIndex implements VectorIndex {
+
+  private static final int BLOCK_ROWS = 1024;
+
+  private final int dimensions;
+  private final int threads;
+  private final ExecutorService executor;
+  private FloatBuffer vectors;
+  private int[] classes = new int[16];
+  private int size;
+
+  /**
+   * @param dimensions the no. of dimensions of the vectors
+   * @param threads    the no. of threads scanning the vectors of each search
+   */
+  public BruteForceKnnIndex(int dimensions, int threads) {
+    if (dimensions <= 0 || threads <= 0) {
+      throw new IllegalArgumentException("dimensions and threads must be positive");
+    }
+    this.dimensions = dimensions;
+    this.threads = threads;
+    // the calling thread scans the first partition
+    this.executor = threads > 1 ? Executors.newFixedThreadPool(threads - 1) : null;
+    this.vectors = allocate(16 * dimensions);
+  }
+
+  private static FloatBuffer allocate(int floats) {
+    return ByteBuffer.allocateDirect(floats * Float.BYTES).order(ByteOrder.nativeOrder()).asFloatBuffer();
+  }
+
+  @Override
+  public int add(float[] vector, int classOrdinal) {
+    if (vector.length != dimensions) {
+      throw new IllegalArgumentException("expected " + dimensions + " dimensions, got " + vector.length);
+    }
+    int doc = size;
+    if ((doc + 1) * dimensions > vectors.capacity()) {
+      FloatBuffer grown = allocate(ArrayUtil.oversize(doc + 1, dimensions * Float.BYTES) * dimensions);
+      FloatBuffer old = vectors.duplicate();
+      old.position(0).limit(doc * dimensions);
+      grown.put(old);
+      vectors = grown;
+    }
+    double norm = 0;
+    for (float value : vector) {
+      norm += value * value;
+    }
+    float scale = norm > 0 ? (float) (1 / Math.sqrt(norm)) : 0;
+    for (int i = 0, offset = doc * dimensions; i < dimensions; i++) {
+      vectors.put(offset + i, vector[i] * scale);
+    }
+    classes = ArrayUtil.grow(classes, doc + 1);
+    classes[doc] = classOrdinal;
+    size++;
+    return doc;
+  }
+
+  /**
+   * @return the top k vectors by cosine similarity with the query mapped to [0, 1], sorted by descending score
+   */
+  @Override
+  public ScoreDoc[] search(float[] vector, int k) {
+    return search(new float[][]{vector}, k)[0];
+  }
+
+  /**
+   * scans the vectors once for a batch of queries
+   *
+   * @param queries the query vectors
+   * @param k       the max no. of vectors to return per query
+   * @return the top k vectors of each query, sorted by descending score
+   */
+  public ScoreDoc[][] search(float[][] queries, int k) {
+    float[] normalized = new float[queries.length * dimensions];
+    for (int q = 0; q < queries.length; q++) {
+      if (queries[q].length != dimensions) {
+        throw new IllegalArgumentException("expected " + dimensions + " dimensions, got " + queries[q].length);
+      }
+      double norm = 0;
+      for (float value : queries[q]) {
+        norm += value * value;
+      }
+      float scale = norm > 0 ? (float) (1 / Math.sqrt(norm)) : 0;
+      for (int i = 0; i < dimensions; i++) {
+        normalized[q * dimensions + i] = queries[q][i] * scale;
+      }
+    }
+    FloatBuffer vectors = this.vectors;
+    int size = this.size;
+    int partitions = executor == null ? 1 : Math.max(1, Math.min(threads, (size + BLOCK_ROWS - 1) / BLOCK_ROWS));
+    List<Future<HitQueue[]>> futures = new ArrayList<>(partitions - 1);
+    for (int p = 1; p < partitions; p++) {
+      int from = (int) ((long) p * size / partitions);
+      int to = (int) ((long) (p + 1) * size / partitions);
+      futures.add(executor.submit(() -> scan(vectors, normalized, queries.length, from, to, k)));
+    }
+    HitQueue[] merged = scan(vectors, normalized, queries.length, 0, (int) ((long) size / partitions), k);
+    try {
+      for (Future<HitQueue[]> future : futures) {
+        HitQueue[] partitionQueues = future.get();
+        for (int q = 0; q < queries.length; q++) {
+          for (ScoreDoc hit : partitionQueues[q]) {
+            merged[q].insertWithOverflow(hit);
+          }
+        }
+      }
+    } catch (InterruptedException e) {
+      throw new ThreadInterruptedException(e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    }
+    ScoreDoc[][] hits = new ScoreDoc[queries.length][];
+    for (int q = 0; q < queries.length; q++) {
+      hits[q] = new ScoreDoc[merged[q].size()];
+      for (int i = hits[q].length - 1; i >= 0; i--) {
+        hits[q][i] = merged[q].pop();
+      }
+    }
+    return hits;
+  }
+
+  /**
+   * scores the given rows against all the given queries, copying one block of rows at a time on heap
+   */
+  private HitQueue[] scan(FloatBuffer vectors, float[] queries, int count, int from, int to, int k) {
+    HitQueue[] queues = new HitQueue[count];
+    for (int q = 0; q < count; q++) {
+      queues[q] = new HitQueue(k);
+    }
+    FloatBuffer view = vectors.duplicate();
+    float[] block = new float[Math.min(BLOCK_ROWS, Math.max(to - from, 0)) * dimensions];
+    for (int start = from; start < to; start += BLOCK_ROWS) {
+      int rows = Math.min(BLOCK_ROWS, to - start);
+      view.position(start * dimensions);
+      view.get(block, 0, rows * dimensions);
+      for (int q = 0, queryOffset = 0; q < count; q++, queryOffset += dimensions) {
+        HitQueue queue = queues[q];
+        for (int r = 0, rowOffset = 0; r < rows; r++, rowOffset += dimensions) {
+          float dot = 0;
+          for (int i = 0; i < dimensions; i++) {
+            dot += queries[queryOffset + i] * block[rowOffset + i];
+          }
+          float score = (1f + dot) / 2f;
+          if (queue.size() < k || score > queue.top().score) {
+            queue.insertWithOverflow(new ScoreDoc(start + r, score));
+          }
+        }
+      }
+    }
+    return queues;
+  }
+
+  @Override
+  public int[] classes(ScoreDoc[] hits) {
+    int[] hitClasses = new int[hits.length];
+    for (int i = 0; i < hits.length; i++) {
+      hitClasses[i] = classes[hits[i].doc];
+    }
+    return hitClasses;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public void close() {
+    if (executor != null) {
+      executor.shutdown();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "exact" + (threads > 1 ? "x" + threads : "");
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.tteofili.looseen.dl4j;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * the paragraph vectors of the docs of a reader, persisted as a file of contiguous floats (indexed by doc id) which is
+ * memory mapped when read.
+ * The file starts with the fingerprint of the training examples the vectors were learned from, docs having no vector
+ * are stored as all zeros vectors.
+ */
+final class DocVectors {
+
+  private static final int MAGIC = 0x70766563;
+  private static final int FORMAT_VERSION = 1;
+
+  private final FloatBuffer vectors;
+  private final int maxDoc;
+  private final int dimensions;
+
+  private DocVectors(FloatBuffer vectors, int maxDoc, int dimensions) {
+    this.vectors = vectors;
+    this.maxDoc = maxDoc;
+    this.dimensions = dimensions;
+  }
+
+  /**
+   * a source of the vector of each doc
+   */
+  interface Source {
+    /**
+     * @return the vector of the given doc, or {@code null} if the doc has no vector
+     */
+    float[] vector(int docId);
+  }
+
+  /**
+   * writes the vectors of docs {@code 0} to {@code maxDoc - 1} to the given file, atomically replacing it
+   */
+  static void write(Path file, String fingerprint, int maxDoc, int dimensions, Source source) throws IOException {
+    Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      byte[] fingerprintBytes = fingerprint.getBytes(StandardCharsets.UTF_8);
+      out.writeInt(fingerprintBytes.length);
+      out.write(fingerprintBytes);
+      out.writeInt(maxDoc);
+      out.writeInt(dimensions);
+      for (int doc = 0; doc < maxDoc; doc++) {
+        float[] vector = source.vector(doc);
+        for (int i = 0; i < dimensions; i++) {
+          out.writeFloat(vector != null ? vector[i] : 0f);
+        }
+      }
+    }
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * @return the memory mapped vectors of the given file, or {@code null} if the file doesn't exist or it was written
+   * with a different format or fingerprint
+   */
+  static DocVectors open(Path file, String fingerprint) throws IOException {
+    if (!Files.exists(file)) {
+      return null;
+    }
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.remaining() < 3 * Integer.BYTES || buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+        return null;
+      }
+      byte[] fingerprintBytes = new byte[buffer.getInt()];
+      if (fingerprintBytes.length > buffer.remaining()) {
+        return null;
+      }
+      buffer.get(fingerprintBytes);
+      if (!fingerprint.equals(new String(fingerprintBytes, StandardCharsets.UTF_8))) {
+        return null;
+      }
+      int maxDoc = buffer.getInt();
+      int dimensions = buffer.getInt();
+      // the mapping stays valid after the channel is closed
+      return new DocVectors(buffer.slice().asFloatBuffer(), maxDoc, dimensions);
+    }
+  }
+
+  int maxDoc() {
+    return maxDoc;
+  }
+
+  int dimensions() {
+    return dimensions;
+  }
+
+  /**
+   * @return the vector of the given doc, or {@code null} if the doc has no vector
+   */
+  float[] vector(int docId) {
+    float[] vector = new float[dimensions];
+    boolean found = false;
+    for (int i = 0, offset = docId * dimensions; i < dimensions; i++) {
+      vector[i] = vectors.get(offset + i);
+      found |= vector[i] != 0f;
+    }
+    return found ? vector : null;
+  }
+}
@@ -0,0 +1,34 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.tteofili.looseen.dl4j;
+
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.util.PriorityQueue;
+
+/**
+ * a bounded min heap of hits, ties are broken in favour of lower doc ids
+ */
+final class HitQueue extends PriorityQueue<ScoreDoc> {
+  HitQueue(int k) {
+    super(k);
+  }
+
+  @Override
+  protected boolean lessThan(ScoreDoc a, ScoreDoc b) {
+    return a.score == b.score ? a.doc > b.doc : a.score < b.score;
+  }
+}
@@ -0,0 +1,669 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.tteofili.looseen.dl4j;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+import com.github.tteofili.looseen.VectorIndex;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.SparseFixedBitSet;
+
+/**
+ * an approximate k nearest neighbours index of dense float vectors, by cosine similarity, based on a hierarchical
+ * navigable small world graph: each vector is a node linked to (up to) {@code m} of its neighbours on each of its
+ * levels ({@code 2 * m} on the bottom level), levels are drawn from an exponentially decaying distribution; searches
+ * greedily descend from the entry point on the top level and run a beam search of width {@code ef} on the bottom one.
+ * Unlike the other {@link VectorIndex}es, vectors can be added concurrently (see {@link #supportsConcurrentAdds()}),
+ * as each node's links are guarded by the node itself; searching is thread safe too.
+ * The graph can be written to a file, which is memory mapped when opened again; the mapped graph is copied on heap
+ * by the first vector added to it.
+ * The level of each node only depends on the seed and on its id, but ids are assigned in the order vectors are added
+ * in, so graphs built by concurrent adds differ from build to build: only adding the same vectors in the same order
+ * from a single thread builds the same graph.
+ */
+public final class HnswIndex implements VectorIndex {
+
+  private static final int MAGIC = 0x686e7377;
+  private static final int FORMAT_VERSION = 2;
+
+  private final int dimensions;
+  private final int m;
+  private final int efConstruction;
+  private final int efSearch;
+  private final long seed;
+  private final double levelMultiplier;
+  private final Object lock = new Object();
+  private volatile Node[] nodes;
+  private int size;
+  private int entryPoint = -1;
+  private int maxLevel = -1;
+  // the graph of an opened file, null while building and once copied on heap
+  private volatile Mapped mapped;
+  private final String[] labels;
+
+  /**
+   * @param dimensions     the no. of dimensions of the vectors
+   * @param m              the max no. of links of each node on its upper levels, twice as many on the bottom one
+   * @param efConstruction the no. of candidate neighbours searched when adding a vector
+   * @param efSearch       the no. of candidate neighbours searched by default when searching, see
+   *                       {@link #search(float[], int, int)}
+   * @param seed           the seed the levels of the nodes are drawn with
+   */
+  public HnswIndex(int dimensions, int m, int efConstruction, int efSearch, long seed) {
+    if (dimensions <= 0 || efConstruction <= 0 || efSearch <= 0) {
+      throw new IllegalArgumentException("dimensions, efConstruction and efSearch must be positive");
+    }
+    if (m < 2) {
+      throw new IllegalArgumentException("m must be at least 2, got " + m);
+    }
+    this.dimensions = dimensions;
+    this.m = m;
+    this.efConstruction = efConstruction;
+    this.efSearch = efSearch;
+    this.seed = seed;
+    this.levelMultiplier = 1 / Math.log(m);
+    this.nodes = new Node[16];
+    this.labels = null;
+  }
+
+  private HnswIndex(int dimensions, int m, int efConstruction, int efSearch, long seed, int size, int entryPoint,
+                    int maxLevel, ByteBuffer buffer, String[] labels) {
+    this.dimensions = dimensions;
+    this.m = m;
+    this.efConstruction = efConstruction;
+    this.efSearch = efSearch;
+    this.seed = seed;
+    this.levelMultiplier = 1 / Math.log(m);
+    this.size = size;
+    this.entryPoint = entryPoint;
+    this.maxLevel = maxLevel;
+    this.nodes = new Node[0];
+    this.mapped = new Mapped(buffer, size, dimensions);
+    this.labels = labels;
+  }
+
+  /**
+   * the sections of an opened file
+   */
+  private static final class Mapped {
+    private final IntBuffer classes;
+    private final IntBuffer levels;
+    private final IntBuffer offsets;
+    private final FloatBuffer vectors;
+    private final IntBuffer links;
+
+    private Mapped(ByteBuffer buffer, int size, int dimensions) {
+      this.classes = section(buffer, size).asIntBuffer();
+      this.levels = section(buffer, size).asIntBuffer();
+      this.offsets = section(buffer, size).asIntBuffer();
+      ByteBuffer vectors = buffer.slice();
+      vectors.limit(size * dimensions * Float.BYTES);
+      buffer.position(buffer.position() + vectors.limit());
+      this.vectors = vectors.asFloatBuffer();
+      this.links = buffer.slice().asIntBuffer();
+    }
+
+    /**
+     * @return the next {@code ints} ints of the given buffer, advancing it past them
+     */
+    private static ByteBuffer section(ByteBuffer buffer, int ints) {
+      ByteBuffer section = buffer.slice();
+      section.limit(ints * Integer.BYTES);
+      buffer.position(buffer.position() + section.limit());
+      return section;
+    }
+  }
+
+  private static final class Node {
+    private final float[] vector;
+    private final int classOrdinal;
+    private final int[][] links;
+    private final int[] counts;
+
+    private Node(float[] vector, int classOrdinal, int level, int m) {
+      this.vector = vector;
+      this.classOrdinal = classOrdinal;
+      this.links = new int[level + 1][];
+      for (int l = 0; l <= level; l++) {
+        links[l] = new int[maxLinks(m, l)];
+      }
+      this.counts = new int[level + 1];
+    }
+  }
+
+  private static int maxLinks(int m, int level) {
+    return level == 0 ? 2 * m : m;
+  }
+
+  /**
+   * @return the offset of the links of the given level within the links of a node, each level stores its no. of
+   * links followed by as many slots as its max no. of links
+   */
+  private int levelOffset(int level) {
+    return level == 0 ? 0 : 1 + 2 * m + (level - 1) * (1 + m);
+  }
+
+  @Override
+  public int add(float[] vector, int classOrdinal) {
+    if (vector.length != dimensions) {
+      throw new IllegalArgumentException("expected " + dimensions + " dimensions, got " + vector.length);
+    }
+    float[] normalized = normalize(vector);
+    int id;
+    int level;
+    Node node;
+    int entry;
+    int entryLevel;
+    synchronized (lock) {
+      if (mapped != null) {
+        copyOnHeap();
+      }
+      id = size++;
+      level = randomLevel(id);
+      node = new Node(normalized, classOrdinal, level, m);
+      Node[] nodes = this.nodes;
+      if (id >= nodes.length) {
+        nodes = ArrayUtil.grow(nodes, id + 1);
+      }
+      nodes[id] = node;
+      // the node is published before it's linked, links are published by the linked nodes' locks
+      this.nodes = nodes;
+      entry = entryPoint;
+      entryLevel = maxLevel;
+      if (entry == -1) {
+        entryPoint = id;
+        maxLevel = level;
+        return id;
+      }
+    }
+    int[] scratch = new int[maxLinks(m, 0)];
+    ScoreDoc current = new ScoreDoc(entry, similarity(normalized, entry));
+    for (int l = entryLevel; l > level; l--) {
+      current = greedySearch(normalized, current, l, scratch);
+    }
+    for (int l = Math.min(level, entryLevel); l >= 0; l--) {
+      ScoreDoc[] candidates = searchLevel(normalized, current, efConstruction, l, scratch);
+      int[] selected = selectNeighbours(id, candidates, maxLinks(m, l));
+      synchronized (node) {
+        System.arraycopy(selected, 0, node.links[l], 0, selected.length);
+        node.counts[l] = selected.length;
+      }
+      for (int neighbour : selected) {
+        link(neighbour, id, l);
+      }
+      current = candidates[0];
+    }
+    if (level > entryLevel) {
+      synchronized (lock) {
+        if (level > maxLevel) {
+          entryPoint = id;
+          maxLevel = level;
+        }
+      }
+    }
+    return id;
+  }
+
+  /**
+   * copies the nodes of the mapped graph on heap, so that they can be linked to new nodes; searches running
+   * meanwhile keep reading the mapped graph, which stays valid
+   */
+  private void copyOnHeap() {
+    Mapped mapped = this.mapped;
+    Node[] nodes = new Node[ArrayUtil.oversize(size + 1, RamUsageEstimator.NUM_BYTES_OBJECT_REF)];
+    int[] links = new int[maxLinks(m, 0)];
+    for (int id = 0; id < size; id++) {
+      Node node = new Node(vector(mapped, id), mapped.classes.get(id), mapped.levels.get(id), m);
+      for (int l = 0; l < node.links.length; l++) {
+        node.counts[l] = links(mapped, id, l, links);
+        System.arraycopy(links, 0, node.links[l], 0, node.counts[l]);
+      }
+      nodes[id] = node;
+    }
+    this.nodes = nodes;
+    this.mapped = null;
+  }
+
+  /**
+   * @return the level of the given node, drawn from an exponentially decaying distribution which only depends on the
+   * seed and the id of the node (that is, on the order nodes are added in)
+   */
+  private int randomLevel(int id) {
+    long z = seed + (id + 1) * 0x9E3779B97F4A7C15L;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    z ^= z >>> 31;
+    double uniform = ((z >>> 11) + 1) * 0x1.0p-53; // in (0, 1]
+    return (int) (-Math.log(uniform) * levelMultiplier);
+  }
+
+  /**
+   * links the given node to a new neighbour, pruning its links if it has too many of them
+   */
+  private void link(int id, int neighbour, int level) {
+    Node node = nodes[id];
+    synchronized (node) {
+      int[] links = node.links[level];
+      int count = node.counts[level];
+      if (count < links.length) {
+        links[count] = neighbour;
+        node.counts[level]++;
+        return;
+      }
+      ScoreDoc[] candidates = new ScoreDoc[count + 1];
+      for (int i = 0; i < count; i++) {
+        candidates[i] = new ScoreDoc(links[i], dot(node.vector, vector(links[i])));
+      }
+      candidates[count] = new ScoreDoc(neighbour, dot(node.vector, vector(neighbour)));
+      Arrays.sort(candidates, (a, b) -> Float.compare(b.score, a.score));
+      int[] selected = selectNeighbours(id, candidates, links.length);
+      System.arraycopy(selected, 0, links, 0, selected.length);
+      node.counts[level] = selected.length;
+    }
+  }
+
+  /**
+   * selects up to the given no. of the given candidates (sorted by descending similarity with the node to link),
+   * preferring the ones which are more similar to the node than to any of the already selected ones, so that links
+   * spread in different directions; the remaining slots are filled with the most similar candidates left out.
+   * The node itself is never selected, as concurrently added nodes may have linked it already
+   */
+  private int[] selectNeighbours(int id, ScoreDoc[] candidates, int max) {
+    int[] selected = new int[Math.min(max, candidates.length)];
+    boolean[] prunedCandidates = new boolean[candidates.length];
+    int count = 0;
+    for (int c = 0; c < candidates.length && count < selected.length; c++) {
+      if (candidates[c].doc == id) {
+        continue;
+      }
+      float[] vector = vector(candidates[c].doc);
+      boolean diverse = true;
+      for (int s = 0; s < count; s++) {
+        if (dot(vector, vector(selected[s])) > candidates[c].score) {
+          diverse = false;
+          break;
+        }
+      }
+      if (diverse) {
+        selected[count++] = candidates[c].doc;
+      } else {
+        prunedCandidates[c] = true;
+      }
+    }
+    for (int c = 0; c < candidates.length && count < selected.length; c++) {
+      if (prunedCandidates[c]) {
+        selected[count++] = candidates[c].doc;
+      }
+    }
+    return count == selected.length ? selected : Arrays.copyOf(selected, count);
+  }
+
+  /**
+   * @return the top k vectors by cosine similarity with the query mapped to [0, 1], sorted by descending score
+   */
+  @Override
+  public ScoreDoc[] search(float[] vector, int k) {
+    return search(vector, k, efSearch);
+  }
+
+  /**
+   * @param vector the query vector
+   * @param k      the max no. of vectors to return
+   * @param ef     the no. of candidate neighbours to search, the higher the better the recall and the slower the
+   *               search
+   * @return the approximate top k vectors by cosine similarity with the query mapped to [0, 1], sorted by descending
+   * score
+   */
+  public ScoreDoc[] search(float[] vector, int k, int ef) {
+    if (vector.length != dimensions) {
+      throw new IllegalArgumentException("expected " + dimensions + " dimensions, got " + vector.length);
+    }
+    int entry;
+    int entryLevel;
+    synchronized (lock) {
+      entry = entryPoint;
+      entryLevel = maxLevel;
+    }
+    if (entry == -1) {
+      return new ScoreDoc[0];
+    }
+    float[] query = normalize(vector);
+    int[] scratch = new int[maxLinks(m, 0)];
+    ScoreDoc current = new ScoreDoc(entry, similarity(query, entry));
+    for (int l = entryLevel; l > 0; l--) {
+      current = greedySearch(query, current, l, scratch);
+    }
+    ScoreDoc[] candidates = searchLevel(query, current, Math.max(ef, k), 0, scratch);
+    ScoreDoc[] hits = new ScoreDoc[Math.min(k, candidates.length)];
+    for (int i = 0; i < hits.length; i++) {
+      hits[i] = new ScoreDoc(candidates[i].doc, (1f + candidates[i].score) / 2f);
+    }
+    return hits;
+  }
+
+  /**
+   * moves from the given node to its most similar neighbour on the given level, as long as it's more similar to the
+   * query
+   */
+  private ScoreDoc greedySearch(float[] query, ScoreDoc current, int level, int[] scratch) {
+    for (boolean moved = true; moved; ) {
+      moved = false;
+      int count = links(current.doc, level, scratch);
+      for (int i = 0; i < count; i++) {
+        float similarity = similarity(query, scratch[i]);
+        if (similarity > current.score) {
+          current = new ScoreDoc(scratch[i], similarity);
+          moved = true;
+        }
+      }
+    }
+    return current;
+  }
+
+  /**
+   * beam searches the given level starting from the given node
+   *
+   * @return up to {@code ef} nodes (scored by their dot product with the query), sorted by descending score
+   */
+  private ScoreDoc[] searchLevel(float[] query, ScoreDoc entry, int ef, int level, int[] scratch) {
+    // nodes added concurrently after the capacity was read are ignored
+    Mapped mapped = this.mapped;
+    SparseFixedBitSet visited = new SparseFixedBitSet(mapped != null ? mapped.levels.limit() : nodes.length);
+    visited.set(entry.doc);
+    PriorityQueue<ScoreDoc> candidates = new PriorityQueue<>((a, b) -> Float.compare(b.score, a.score));
+    HitQueue results = new HitQueue(ef);
+    candidates.add(entry);
+    results.add(entry);
+    while (!candidates.isEmpty()) {
+      ScoreDoc candidate = candidates.poll();
+      if (results.size() >= ef && candidate.score < results.top().score) {
+        break;
+      }
+      int count = links(candidate.doc, level, scratch);
+      for (int i = 0; i < count; i++) {
+        int neighbour = scratch[i];
+        if (neighbour >= visited.length() || visited.get(neighbour)) {
+          continue;
+        }
+        visited.set(neighbour);
+        float similarity = similarity(query, neighbour);
+        if (results.size() < ef || similarity > results.top().score) {
+          ScoreDoc hit = new ScoreDoc(neighbour, similarity);
+          candidates.add(hit);
+          results.insertWithOverflow(hit);
+        }
+      }
+    }
+    ScoreDoc[] hits = new ScoreDoc[results.size()];
+    for (int i = hits.length - 1; i >= 0; i--) {
+      hits[i] = results.pop();
+    }
+    return hits;
+  }
+
+  /**
+   * copies the links of the given node on the given level
+   *
+   * @return the no. of links
+   */
+  private int links(int id, int level, int[] links) {
+    Mapped mapped = this.mapped;
+    if (mapped != null) {
+      return links(mapped, id, level, links);
+    }
+    Node node = nodes[id];
+    if (level >= node.links.length) {
+      return 0;
+    }
+    synchronized (node) {
+      int count = node.counts[level];
+      System.arraycopy(node.links[level], 0, links, 0, count);
+      return count;
+    }
+  }
+
+  private int links(Mapped mapped, int id, int level, int[] links) {
+    if (level > mapped.levels.get(id)) {
+      return 0;
+    }
+    int offset = mapped.offsets.get(id) + levelOffset(level);
+    int count = mapped.links.get(offset);
+    for (int i = 0; i < count; i++) {
+      links[i] = mapped.links.get(offset + 1 + i);
+    }
+    return count;
+  }
+
+  private float similarity(float[] query, int id) {
+    Mapped mapped = this.mapped;
+    if (mapped != null) {
+      float dot = 0;
+      for (int i = 0, offset = id * dimensions; i < dimensions; i++) {
+        dot += query[i] * mapped.vectors.get(offset + i);
+      }
+      return dot;
+    }
+    return dot(query, nodes[id].vector);
+  }
+
+  private float[] vector(int id) {
+    Mapped mapped = this.mapped;
+    return mapped != null ? vector(mapped, id) : nodes[id].vector;
+  }
+
+  private float[] vector(Mapped mapped, int id) {
+    float[] vector = new float[dimensions];
+    for (int i = 0, offset = id * dimensions; i < dimensions; i++) {
+      vector[i] = mapped.vectors.get(offset + i);
+    }
+    return vector;
+  }
+
+  private int level(int id) {
+    Mapped mapped = this.mapped;
+    return mapped != null ? mapped.levels.get(id) : nodes[id].links.length - 1;
+  }
+
+  private int classOrdinal(int id) {
+    Mapped mapped = this.mapped;
+    return mapped != null ? mapped.classes.get(id) : nodes[id].classOrdinal;
+  }
+
+  private static float dot(float[] a, float[] b) {
+    float dot = 0;
+    for (int i = 0; i < a.length; i++) {
+      dot += a[i] * b[i];
+    }
+    return dot;
+  }
+
+  private float[] normalize(float[] vector) {
+    double norm = 0;
+    for (float value : vector) {
+      norm += value * value;
+    }
+    float scale = norm > 0 ? (float) (1 / Math.sqrt(norm)) : 0;
+    float[] normalized = new float[dimensions];
+    for (int i = 0; i < dimensions; i++) {
+      normalized[i] = vector[i] * scale;
+    }
+    return normalized;
+  }
+
+  @Override
+  public int[] classes(ScoreDoc[] hits) {
+    int[] hitClasses = new int[hits.length];
+    for (int i = 0; i < hits.length; i++) {
+      hitClasses[i] = classOrdinal(hits[i].doc);
+    }
+    return hitClasses;
+  }
+
+  @Override
+  public int size() {
+    synchronized (lock) {
+      return size;
+    }
+  }
+
+  @Override
+  public boolean supportsConcurrentAdds() {
+    return true;
+  }
+
+  /**
+   * @return the class labels stored along with an index opened from a file, indexed by class ordinal, or
+   * {@code null} if this index wasn't opened from a file
+   */
+  public String[] labels() {
+    return labels;
+  }
+
+  /**
+   * writes the graph to the given file, atomically replacing it; vectors must not be added meanwhile.
+   * The file stores the class ordinals, levels and offsets of the links of all the nodes, followed by their vectors
+   * and links, so that they can be memory mapped as they are
+   *
+   * @param file        the file to write
+   * @param fingerprint a string identifying the vectors, see {@link #open(Path, String, int)}
+   * @param labels      the class labels indexed by class ordinal
+   */
+  public void write(Path file, String fingerprint, String[] labels) throws IOException {
+    Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      writeString(out, fingerprint);
+      out.writeInt(labels.length);
+      for (String label : labels) {
+        writeString(out, label);
+      }
+      out.writeInt(dimensions);
+      out.writeInt(m);
+      out.writeInt(efConstruction);
+      out.writeLong(seed);
+      out.writeInt(size);
+      out.writeInt(entryPoint);
+      out.writeInt(maxLevel);
+      for (int id = 0; id < size; id++) {
+        out.writeInt(classOrdinal(id));
+      }
+      for (int id = 0; id < size; id++) {
+        out.writeInt(level(id));
+      }
+      for (int id = 0, offset = 0; id < size; id++) {
+        out.writeInt(offset);
+        int level = level(id);
+        offset += levelOffset(level + 1);
+      }
+      for (int id = 0; id < size; id++) {
+        for (float value : vector(id)) {
+          out.writeFloat(value);
+        }
+      }
+      int[] links = new int[maxLinks(m, 0)];
+      for (int id = 0; id < size; id++) {
+        int level = level(id);
+        for (int l = 0; l <= level; l++) {
+          int count = links(id, l, links);
+          out.writeInt(count);
+          for (int i = 0; i < maxLinks(m, l); i++) {
+            out.writeInt(i < count ? links[i] : -1);
+          }
+        }
+      }
+    }
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * @param file        the file to open
+   * @param fingerprint the fingerprint the file was written with
+   * @param efSearch    the no. of candidate neighbours searched by default when searching
+   * @return the memory mapped graph of the given file, or {@code null} if the file doesn't exist or it was written
+   * with a different format or fingerprint
+   */
+  public static HnswIndex open(Path file, String fingerprint, int efSearch) throws IOException {
+    if (!Files.exists(file)) {
+      return null;
+    }
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.remaining() < 3 * Integer.BYTES || buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+        return null;
+      }
+      String fileFingerprint = readString(buffer);
+      if (!fingerprint.equals(fileFingerprint)) {
+        return null;
+      }
+      String[] labels = new String[buffer.getInt()];
+      for (int i = 0; i < labels.length; i++) {
+        labels[i] = readString(buffer);
+      }
+      int dimensions = buffer.getInt();
+      int m = buffer.getInt();
+      int efConstruction = buffer.getInt();
+      long seed = buffer.getLong();
+      int size = buffer.getInt();
+      int entryPoint = buffer.getInt();
+      int maxLevel = buffer.getInt();
+      // the mapping stays valid after the channel is closed
+      return new HnswIndex(dimensions, m, efConstruction, efSearch, seed, size, entryPoint, maxLevel, buffer,
+          labels);
+    }
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    int length = buffer.getInt();
+    if (length < 0 || length > buffer.remaining()) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public void close() {
+  }
+
+  @Override
+  public String toString() {
+    return "hnsw(m=" + m + ",efConstruction=" + efConstruction + ",efSearch=" + efSearch + ")";
+  }
+}
@@ -18,11 +18,28 @@ package com.github.tteofili.looseen.dl4j;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import com.github.tteofili.looseen.ClassVoter;
+import com.github.tteofili.looseen.Futures;
+import com.github.tteofili.looseen.LiveDocsVisitor;
+import com.github.tteofili.looseen.LruTextCache;
+import com.github.tteofili.looseen.MinHashOverlapScorer;
+import com.github.tteofili.looseen.RandomHyperplaneLSHIndex;
+import com.github.tteofili.looseen.TrainingExamples;
+import com.github.tteofili.looseen.VectorIndex;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.core.WhitespaceTokenizerFactory;
@@ -31,171 +48,386 @@ import org.apache.lucene.analysis.minhash.MinHashFilter;
 import org.apache.lucene.analysis.minhash.MinHashFilterFactory;
 import org.apache.lucene.analysis.shingle.ShingleFilterFactory;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
-import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.TermToBytesRefAttribute;
 import org.apache.lucene.classification.ClassificationResult;
 import org.apache.lucene.classification.Classifier;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.SortedDocValuesField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
-import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
-import org.apache.lucene.index.IndexableField;
-import org.apache.lucene.index.Term;
-import org.apache.lucene.search.BooleanClause;
-import org.apache.lucene.search.BooleanQuery;
-import org.apache.lucene.search.ConstantScoreQuery;
 import org.apache.lucene.search.IndexSearcher;
-import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
-import org.apache.lucene.search.TermQuery;
-import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.store.RAMDirectory;
 import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefArray;
+import org.apache.lucene.util.Counter;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.ThreadInterruptedException;
+import org.deeplearning4j.models.embeddings.loader.WordVectorSerializer;
 import org.deeplearning4j.models.paragraphvectors.ParagraphVectors;
 import org.deeplearning4j.text.tokenization.tokenizerfactory.DefaultTokenizerFactory;
 import org.deeplearning4j.text.tokenization.tokenizerfactory.TokenizerFactory;
 import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
- * a {@link Classifier} based on LSH via queries on in memory sidecar index using {@link MinHashFilter} to index passed
- * reader's docs.
+ * a {@link Classifier} based on LSH over the paragraph vectors learned from the passed reader's docs.
+ * By default each doc vector is formatted as text and indexed, via {@link MinHashFilter}, in an in memory sidecar index
+ * whose queries are run through a single {@link SearcherManager} shared by concurrent calls; alternatively, see
+ * {@link Builder#hyperplanes(int, int)}, doc vectors are kept as floats in a {@link RandomHyperplaneLSHIndex} and
+ * neighbours are found by their cosine similarity, or exactly by a {@link BruteForceKnnIndex}, see
+ * {@link Builder#exact()}, or through the graph of a {@link HnswIndex}, see {@link Builder#hnsw(int, int, int)}.
+ * Training paragraph vectors (and building the graph) can be skipped on later startups by persisting them, see
+ * {@link Builder#modelPath(Path)}.
+ * Inferring the vector of each classified text is the most expensive step, batches of texts are inferred (and
+ * classified) concurrently, see {@link #classifyAll(List, ExecutorService)}, and inferred vectors can be cached, see
+ * {@link Builder#cacheSize(int)}.
  */
 public class MinHashParagraphVectorsClassifier implements Classifier<BytesRef>, Closeable {
 
+  private static final Logger LOG = LoggerFactory.getLogger(MinHashParagraphVectorsClassifier.class);
   private static final String TEXT_FIELD = "text";
   private static final String CLASS_FIELD = "class";
+  private static final int K = 3;
+  private static final int LAYER_SIZE = 60;
+  private static final String MODEL_FILE = "paragraph-vectors.zip";
+  private static final String VECTORS_FILE = "doc-vectors.bin";
+  private static final String GRAPH_FILE = "hnsw.bin";
   private final RAMDirectory directory;
   private final int min;
   private final int hashCount;
   private final int hashSize;
   private final ParagraphVectors paragraphVectors;
+  private final Analyzer analyzer;
+  private final SearcherManager searcherManager;
+  private final VectorIndex vectorIndex;
+  private final ClassVoter classVoter = new ClassVoter(CLASS_FIELD);
+  private final LruTextCache<float[]> cache;
+  private final MinHashOverlapScorer.Scratch scratch = new MinHashOverlapScorer.Scratch();
+  private final int threads;
+  private ExecutorService executor;
 
   public MinHashParagraphVectorsClassifier(IndexReader reader, String textField, String categoryField, int min, int hashCount, int hashSize) {
-    this.min = min;
-    this.hashCount = hashCount;
-    this.hashSize = hashSize;
-    try {
-      Analyzer analyzer = createMinHashAnalyzer(min, hashCount, hashSize);
-
-      try {
-        System.out.println("learning paragraph vectors");
-        FieldValuesLabelAwareIterator labelAwareIterator = new FieldValuesLabelAwareIterator(reader, textField, new StandardAnalyzer());
-        TokenizerFactory tokenizerFactory = new DefaultTokenizerFactory();
-        paragraphVectors = new ParagraphVectors.Builder()
-            .iterate(labelAwareIterator)
-            .labelsSource(labelAwareIterator.getLabelsSource())
-            .layerSize(60)
-            .minWordFrequency(1)
-            .batchSize(10)
-            .tokenizerFactory(tokenizerFactory)
-            .trainWordVectors(true)
-            .useAdaGrad(true)
-            .build();
-        paragraphVectors.fit();
-
-        System.out.println("paragraph vectors learning finished");
+    this(new Builder(min, hashCount, hashSize), reader, textField, categoryField);
+  }
 
+  private MinHashParagraphVectorsClassifier(Builder builder, IndexReader reader, String textField,
+                                            String categoryField) {
+    this.min = builder.min;
+    this.hashCount = builder.hashCount;
+    this.hashSize = builder.hashSize;
+    this.cache = builder.cacheSize > 0 ? new LruTextCache<>(builder.cacheSize) : null;
+    this.threads = builder.threads;
+    try {
+      DocVectors docVectors = null;
+      String fingerprint = null;
+      boolean trained = true;
+      if (builder.modelPath != null) {
+        fingerprint = "paragraphVectors:" + LAYER_SIZE + "|" +
+            TrainingExamples.fromReader(reader, textField, categoryField).fingerprint();
+        Path modelFile = builder.modelPath.resolve(MODEL_FILE);
+        Path vectorsFile = builder.modelPath.resolve(VECTORS_FILE);
+        docVectors = DocVectors.open(vectorsFile, fingerprint);
+        if (docVectors != null && Files.exists(modelFile)) {
+          paragraphVectors = WordVectorSerializer.readParagraphVectors(modelFile.toFile());
+          paragraphVectors.setTokenizerFactory(new DefaultTokenizerFactory());
+          trained = false;
+          LOG.info("paragraph vectors loaded from {}", builder.modelPath);
+        } else {
+          // the vectors file is written last, so that a partially persisted model is detected as stale
+          paragraphVectors = learnParagraphVectors(reader, textField);
+          Files.createDirectories(builder.modelPath);
+          WordVectorSerializer.writeParagraphVectors(paragraphVectors, modelFile.toFile());
+          DocVectors.write(vectorsFile, fingerprint, reader.maxDoc(), LAYER_SIZE,
+              docId -> lookupVector(paragraphVectors, docId));
+          docVectors = DocVectors.open(vectorsFile, fingerprint);
+          LOG.info("paragraph vectors saved to {}", builder.modelPath);
+        }
+      } else {
+        paragraphVectors = learnParagraphVectors(reader, textField);
+      }
+      DocVectors.Source docVectorSource = docVectors != null ? docVectors::vector
+          : docId -> lookupVector(paragraphVectors, docId);
+      if (builder.tables > 0 || builder.exact || builder.m > 0) {
+        analyzer = null;
+        directory = null;
+        searcherManager = null;
+        Path graphFile = builder.m > 0 && builder.modelPath != null ? builder.modelPath.resolve(GRAPH_FILE) : null;
+        String graphFingerprint = fingerprint + "|hnsw:" + builder.m + ":" + builder.efConstruction + ":" +
+            builder.seed;
+        // a graph built out of vectors which have just been trained again is stale, whatever its fingerprint
+        HnswIndex persistedGraph = graphFile != null && !trained ?
+            HnswIndex.open(graphFile, graphFingerprint, builder.efSearch) : null;
+        if (persistedGraph != null) {
+          for (String label : persistedGraph.labels()) {
+            classVoter.ordinal(new BytesRef(label));
+          }
+          vectorIndex = persistedGraph;
+          LOG.info("loaded vector index {} from {}", vectorIndex, graphFile);
+        } else {
+          if (builder.m > 0) {
+            vectorIndex = new HnswIndex(LAYER_SIZE, builder.m, builder.efConstruction, builder.efSearch, builder.seed);
+          } else if (builder.exact) {
+            vectorIndex = new BruteForceKnnIndex(LAYER_SIZE, threads);
+          } else {
+            vectorIndex = new RandomHyperplaneLSHIndex(LAYER_SIZE, builder.tables, builder.bits, builder.seed);
+          }
+          boolean concurrentAdds = vectorIndex.supportsConcurrentAdds();
+          Map<Integer, String> labels = new ConcurrentHashMap<>();
+          LiveDocsVisitor.visit(reader, Collections.singleton(categoryField), threads, (docId, d) -> {
+            float[] vector = docVectorSource.vector(docId);
+            if (vector == null) {
+              return;
+            }
+            String label = d.getField(categoryField).stringValue();
+            int classOrdinal = classVoter.ordinal(new BytesRef(label));
+            labels.put(classOrdinal, label);
+            if (concurrentAdds) {
+              vectorIndex.add(vector, classOrdinal);
+            } else {
+              synchronized (vectorIndex) {
+                vectorIndex.add(vector, classOrdinal);
+              }
+            }
+          });
+          LOG.info("created in memory vector index {}", vectorIndex);
+          if (graphFile != null) {
+            String[] labelsByOrdinal = new String[labels.size()];
+            for (Map.Entry<Integer, String> entry : labels.entrySet()) {
+              labelsByOrdinal[entry.getKey()] = entry.getValue();
+            }
+            ((HnswIndex) vectorIndex).write(graphFile, graphFingerprint, labelsByOrdinal);
+            LOG.info("vector index saved to {}", graphFile);
+          }
+        }
+      } else {
+        vectorIndex = null;
+        analyzer = createMinHashAnalyzer(min, hashCount, hashSize);
         IndexWriterConfig config = new IndexWriterConfig(analyzer);
         directory = new RAMDirectory();
         IndexWriter writer = new IndexWriter(directory, config);
-        for (int i = 0; i < reader.maxDoc(); i++) {
-          Document document = new Document();
-          Document d = reader.document(i);
-          String categoryValue = d.getField(categoryField).stringValue();
-          String docVectorRepresentationString = paragraphVectors.getLookupTable().vector("doc_" + i).toString();
-          document.add(new TextField(TEXT_FIELD, docVectorRepresentationString, Field.Store.YES));
-          document.add(new StringField(CLASS_FIELD, categoryValue, Field.Store.YES));
-          writer.addDocument(document);
-        }
+        LiveDocsVisitor.visit(reader, Collections.singleton(categoryField), threads,
+            (docId, d) -> {
+              float[] vector = docVectorSource.vector(docId);
+              if (vector == null) {
+                return;
+              }
+              Document document = new Document();
+              String categoryValue = d.getField(categoryField).stringValue();
+              String docVectorRepresentationString = Nd4j.create(vector).toString();
+              document.add(new TextField(TEXT_FIELD, docVectorRepresentationString, Field.Store.YES));
+              document.add(new StringField(CLASS_FIELD, categoryValue, Field.Store.NO));
+              document.add(new SortedDocValuesField(CLASS_FIELD, new BytesRef(categoryValue)));
+              writer.addDocument(document);
+            });
         writer.commit();
         writer.close();
-      } catch (IOException e) {
-        throw new RuntimeException(e);
+        searcherManager = new SearcherManager(directory, null);
+        LOG.info("created in memory minhash index");
       }
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
-    System.out.println("created in memory minhash index");
+  }
 
-    BooleanQuery.setMaxClauseCount(Integer.MAX_VALUE);
+  private static ParagraphVectors learnParagraphVectors(IndexReader reader, String textField) throws IOException {
+    LOG.info("learning paragraph vectors");
+    FieldValuesLabelAwareIterator labelAwareIterator = new FieldValuesLabelAwareIterator(reader, textField, new StandardAnalyzer());
+    TokenizerFactory tokenizerFactory = new DefaultTokenizerFactory();
+    ParagraphVectors paragraphVectors = new ParagraphVectors.Builder()
+        .iterate(labelAwareIterator)
+        .labelsSource(labelAwareIterator.getLabelsSource())
+        .layerSize(LAYER_SIZE)
+        .minWordFrequency(1)
+        .batchSize(10)
+        .tokenizerFactory(tokenizerFactory)
+        .trainWordVectors(true)
+        .useAdaGrad(true)
+        .build();
+    paragraphVectors.fit();
+
+    LOG.info("paragraph vectors learning finished");
+    return paragraphVectors;
   }
 
-  List<ClassificationResult<BytesRef>> buildListFromTopDocs(IndexSearcher searcher, String categoryFieldName, TopDocs topDocs, int k) throws IOException {
-    Map<BytesRef, Integer> classCounts = new HashMap<>();
-    Map<BytesRef, Double> classBoosts = new HashMap<>(); // this is a boost based on class ranking positions in topDocs
-    float maxScore = topDocs.getMaxScore();
-    for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
-      IndexableField storableField = searcher.doc(scoreDoc.doc).getField(categoryFieldName);
-      if (storableField != null) {
-        BytesRef cl = new BytesRef(storableField.stringValue());
-        //update count
-        Integer count = classCounts.get(cl);
-        if (count != null) {
-          classCounts.put(cl, count + 1);
-        } else {
-          classCounts.put(cl, 1);
-        }
-        //update boost, the boost is based on the best score
-        Double totalBoost = classBoosts.get(cl);
-        double singleBoost = scoreDoc.score / maxScore;
-        if (totalBoost != null) {
-          classBoosts.put(cl, totalBoost + singleBoost);
-        } else {
-          classBoosts.put(cl, singleBoost);
-        }
+  /**
+   * @return the vector learned for the given doc, or {@code null} if the doc has no vector
+   */
+  private static float[] lookupVector(ParagraphVectors paragraphVectors, int docId) {
+    INDArray vector = paragraphVectors.getLookupTable().vector("doc_" + docId);
+    return vector != null ? toFloats(vector) : null;
+  }
+
+  /**
+   * copies the values of the given (row) vector, which may be a view on the lookup table
+   */
+  static float[] toFloats(INDArray vector) {
+    float[] floats = new float[(int) vector.length()];
+    for (int i = 0; i < floats.length; i++) {
+      floats[i] = vector.getFloat(i);
+    }
+    return floats;
+  }
+
+  @Override
+  public ClassificationResult<BytesRef> assignClass(String text) throws IOException {
+    return first(classify(text));
+  }
+
+  @Override
+  public List<ClassificationResult<BytesRef>> getClasses(String text) throws IOException {
+    return classify(text);
+  }
+
+  @Override
+  public List<ClassificationResult<BytesRef>> getClasses(String text, int max) throws IOException {
+    List<ClassificationResult<BytesRef>> classes = classify(text);
+    return new ArrayList<>(classes.subList(0, Math.min(max, classes.size())));
+  }
+
+  /**
+   * classifies a batch of texts concurrently: their vectors are inferred in parallel on the given executor, then
+   * their nearest neighbours are searched in parallel too, or all at once by a single scan of the
+   * {@link BruteForceKnnIndex}.
+   * If the inference or the search of any text fails (or the calling thread is interrupted), the texts not
+   * processed yet are skipped and the failure is thrown once all the submitted tasks are done.
+   *
+   * @param texts    the texts to classify
+   * @param executor the executor running the inference and the search of each text
+   * @return the assigned class of each text (or {@code null} if no class could be assigned), in input order
+   */
+  public List<ClassificationResult<BytesRef>> classifyAll(List<String> texts, ExecutorService executor)
+      throws IOException {
+    float[][] vectors = inferVectors(texts, executor);
+    List<ClassificationResult<BytesRef>> results = new ArrayList<>(texts.size());
+    if (vectorIndex instanceof BruteForceKnnIndex) {
+      for (ScoreDoc[] hits : ((BruteForceKnnIndex) vectorIndex).search(vectors, K)) {
+        results.add(first(classVoter.vote(hits, vectorIndex.classes(hits), K)));
+      }
+      return results;
+    }
+    AtomicBoolean aborted = new AtomicBoolean();
+    List<Future<List<ClassificationResult<BytesRef>>>> futures = new ArrayList<>(vectors.length);
+    try {
+      for (float[] vector : vectors) {
+        futures.add(executor.submit(() -> aborted.get() ? null : classify(vector)));
+      }
+      for (Future<List<ClassificationResult<BytesRef>>> future : futures) {
+        results.add(first(get(future)));
       }
+      return results;
+    } finally {
+      aborted.set(true);
+      Futures.awaitAll(futures);
     }
-    List<ClassificationResult<BytesRef>> returnList = new ArrayList<>();
-    List<ClassificationResult<BytesRef>> temporaryList = new ArrayList<>();
-    int sumdoc = 0;
-    for (Map.Entry<BytesRef, Integer> entry : classCounts.entrySet()) {
-      Integer count = entry.getValue();
-      Double normBoost = classBoosts.get(entry.getKey()) / count; //the boost is normalized to be 0<b<1
-      temporaryList.add(new ClassificationResult<>(entry.getKey().clone(), (count * normBoost) / (double) k));
-      sumdoc += count;
+  }
+
+  /**
+   * classifies a batch of texts concurrently on an executor owned by the classifier, which is created on first use
+   * with as many threads as {@link Builder#threads(int)} and shut down by {@link #close()}
+   *
+   * @see #classifyAll(List, ExecutorService)
+   */
+  public List<ClassificationResult<BytesRef>> classifyAll(List<String> texts) throws IOException {
+    return classifyAll(texts, executor());
+  }
+
+  private synchronized ExecutorService executor() {
+    if (executor == null) {
+      executor = Executors.newFixedThreadPool(threads);
     }
+    return executor;
+  }
 
-    //correction
-    if (sumdoc < k) {
-      for (ClassificationResult<BytesRef> cr : temporaryList) {
-        returnList.add(new ClassificationResult<>(cr.getAssignedClass(), cr.getScore() * k / (double) sumdoc));
+  /**
+   * infers the paragraph vectors of a batch of texts concurrently, unless they are cached
+   *
+   * @param texts    the texts to infer the vectors of
+   * @param executor the executor running the inference of each text
+   * @return the vector of each text, in input order
+   * @see #classifyAll(List, ExecutorService)
+   */
+  public float[][] inferVectors(List<String> texts, ExecutorService executor) throws IOException {
+    AtomicBoolean aborted = new AtomicBoolean();
+    List<Future<float[]>> futures = new ArrayList<>(texts.size());
+    try {
+      for (String text : texts) {
+        futures.add(executor.submit(() -> aborted.get() ? null : inferVector(text)));
       }
-    } else {
-      returnList = temporaryList;
+      float[][] vectors = new float[texts.size()][];
+      for (int i = 0; i < vectors.length; i++) {
+        vectors[i] = get(futures.get(i));
+      }
+      return vectors;
+    } finally {
+      aborted.set(true);
+      Futures.awaitAll(futures);
     }
-    return returnList;
   }
 
-  @Override
-  public ClassificationResult<BytesRef> assignClass(String text) throws IOException {
-    DirectoryReader reader = DirectoryReader.open(directory);
-    IndexSearcher searcher = new IndexSearcher(reader);
-    int k = 3;
+  /**
+   * @return the paragraph vector of the given text, from the cache if it was inferred before
+   */
+  private float[] inferVector(String text) {
+    if (cache == null) {
+      return toFloats(paragraphVectors.inferVector(text));
+    }
+    float[] vector = cache.get(text);
+    if (vector == null) {
+      vector = cache.put(text, toFloats(paragraphVectors.inferVector(text)));
+    }
+    return vector;
+  }
 
+  private static <T> T get(Future<T> future) throws IOException {
     try {
-      INDArray indArray = paragraphVectors.inferVector(text);
-      TopDocs topDocs = searcher.search(buildQuery(TEXT_FIELD, indArray.toString(), min, hashCount, hashSize), k);
-      if (topDocs.totalHits > 0) {
-        return buildListFromTopDocs(searcher, CLASS_FIELD, topDocs, k).get(0);
-      } else {
-        return null;
+      return future.get();
+    } catch (InterruptedException e) {
+      throw new ThreadInterruptedException(e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
       }
-    } finally {
-      reader.close();
+      throw new RuntimeException(e.getCause());
     }
   }
 
-  @Override
-  public List<ClassificationResult<BytesRef>> getClasses(String text) throws IOException {
-    return null;
+  private static ClassificationResult<BytesRef> first(List<ClassificationResult<BytesRef>> classes) {
+    return classes.isEmpty() ? null : classes.get(0);
   }
 
-  @Override
-  public List<ClassificationResult<BytesRef>> getClasses(String text, int max) throws IOException {
-    return null;
+  private List<ClassificationResult<BytesRef>> classify(String text) throws IOException {
+    return classify(inferVector(text));
+  }
+
+  private List<ClassificationResult<BytesRef>> classify(float[] vector) throws IOException {
+    if (vectorIndex != null) {
+      ScoreDoc[] hits = vectorIndex.search(vector, K);
+      return classVoter.vote(hits, vectorIndex.classes(hits), K);
+    }
+    IndexSearcher searcher = searcherManager.acquire();
+    try {
+      // the scored text is formatted the same way as the indexed doc vectors
+      ScoreDoc[] hits = buildScorer(TEXT_FIELD, Nd4j.create(vector).toString())
+          .search(searcher.getIndexReader(), K, scratch);
+      return classVoter.vote(searcher.getIndexReader(), hits, K);
+    } finally {
+      searcherManager.release(searcher);
+    }
+  }
+
+  /**
+   * @return the cache of inferred vectors, or {@code null} if caching is disabled, see {@link Builder#cacheSize(int)}
+   */
+  public LruTextCache<float[]> getCache() {
+    return cache;
   }
 
   public static Analyzer createMinHashAnalyzer(int min, int hashCount, int hashSetSize) throws IOException {
@@ -216,43 +448,157 @@ public class MinHashParagraphVectorsClassifier implements Classifier<BytesRef>,
     return builder.build();
   }
 
-  private Query buildQuery(String field, String query, int min, int hashCount, int hashSetSize) throws IOException {
-    Analyzer chain = createMinHashAnalyzer(min, hashCount, hashSetSize);
-    ArrayList<String> tokens = getTokens(chain, field, query);
-    chain.close();
-    BooleanQuery.Builder builder = new BooleanQuery.Builder();
-    for (String token : tokens) {
-      builder.add(new ConstantScoreQuery(new TermQuery(new Term(TEXT_FIELD, token))), BooleanClause.Occur.SHOULD);
-    }
-    return builder.build();
+  private MinHashOverlapScorer buildScorer(String field, String text) throws IOException {
+    return new MinHashOverlapScorer(TEXT_FIELD, getTokens(analyzer, field, text));
   }
 
-  private ArrayList<String> getTokens(Analyzer analyzer, String field, String value) throws IOException {
-    ArrayList<String> tokens = new ArrayList<String>();
-    TokenStream ts = analyzer.tokenStream(field, value);
-    ts.reset();
-    while (ts.incrementToken()) {
-      CharTermAttribute termAttribute = ts.getAttribute(CharTermAttribute.class);
-      String token = new String(termAttribute.buffer(), 0, termAttribute.length());
-      tokens.add(token);
+  private BytesRefArray getTokens(Analyzer analyzer, String field, String value) throws IOException {
+    BytesRefArray tokens = new BytesRefArray(Counter.newCounter());
+    try (TokenStream ts = analyzer.tokenStream(field, value)) {
+      TermToBytesRefAttribute termAttribute = ts.addAttribute(TermToBytesRefAttribute.class);
+      ts.reset();
+      while (ts.incrementToken()) {
+        tokens.append(termAttribute.getBytesRef());
+      }
+      ts.end();
     }
-    ts.end();
-    ts.close();
     return tokens;
   }
 
   @Override
-  public void close() {
-    directory.close();
+  public void close() throws IOException {
+    synchronized (this) {
+      if (executor != null) {
+        executor.shutdown();
+      }
+    }
+    scratch.clear();
+    IOUtils.close(vectorIndex, searcherManager, analyzer, directory);
   }
 
   @Override
   public String toString() {
     return "MinHashParagraphVectorsClassifier{" +
-        "min=" + min +
-        ", hashCount=" + hashCount +
-        ", hashSize=" + hashSize +
+        (vectorIndex != null ? "vectorIndex=" + vectorIndex :
+            "min=" + min +
+            ", hashCount=" + hashCount +
+            ", hashSize=" + hashSize) +
         ", paragraphVectors=" + paragraphVectors +
         '}';
   }
+
+  /**
+   * builder for {@link MinHashParagraphVectorsClassifier}s, by default doc vectors are MinHashed as text
+   */
+  public static class Builder {
+
+    private final int min;
+    private final int hashCount;
+    private final int hashSize;
+    private int tables;
+    private int bits;
+    private long seed = 42;
+    private Path modelPath;
+    private boolean exact;
+    private int m;
+    private int efConstruction;
+    private int efSearch;
+    private int cacheSize;
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * @param min       the size of the word shingles of the formatted doc vectors
+     * @param hashCount the no. of hash functions
+     * @param hashSize  the no. of hashes kept per hash function
+     */
+    public Builder(int min, int hashCount, int hashSize) {
+      this.min = min;
+      this.hashCount = hashCount;
+      this.hashSize = hashSize;
+    }
+
+    /**
+     * keeps doc vectors as floats in a {@link RandomHyperplaneLSHIndex} with the given no. of tables of the given no.
+     * of random hyperplanes, instead of MinHashing their text format; the MinHash parameters are ignored
+     */
+    public Builder hyperplanes(int tables, int bits) {
+      if (tables <= 0 || bits <= 0) {
+        throw new IllegalArgumentException("tables and bits must be positive");
+      }
+      this.tables = tables;
+      this.bits = bits;
+      return this;
+    }
+
+    /**
+     * keeps doc vectors as floats in a {@link BruteForceKnnIndex}, finding the exact nearest neighbours by cosine
+     * similarity with a parallel scan, instead of MinHashing their text format; the MinHash parameters are ignored
+     */
+    public Builder exact() {
+      this.exact = true;
+      return this;
+    }
+
+    /**
+     * keeps doc vectors as floats in a {@link HnswIndex}, whose graph is built concurrently and searched in sub linear
+     * time, instead of MinHashing their text format; the MinHash parameters are ignored.
+     * The graph is persisted along with the paragraph vectors, see {@link #modelPath(Path)}
+     *
+     * @param m              the max no. of links of each node of the graph (on its upper levels)
+     * @param efConstruction the no. of candidate neighbours searched when building the graph
+     * @param efSearch       the no. of candidate neighbours searched when classifying
+     */
+    public Builder hnsw(int m, int efConstruction, int efSearch) {
+      if (m < 2 || efConstruction <= 0 || efSearch <= 0) {
+        throw new IllegalArgumentException("m must be at least 2, efConstruction and efSearch must be positive");
+      }
+      this.m = m;
+      this.efConstruction = efConstruction;
+      this.efSearch = efSearch;
+      return this;
+    }
+
+    /**
+     * caches the vectors inferred for up to the given no. of distinct texts, disabled by default
+     */
+    public Builder cacheSize(int cacheSize) {
+      this.cacheSize = cacheSize;
+      return this;
+    }
+
+    /**
+     * sets the no. of threads used to build (and exactly scan) the vector index, and to classify batches of texts, see
+     * {@link MinHashParagraphVectorsClassifier#classifyAll(List)}, defaults to the no. of available processors
+     */
+    public Builder threads(int threads) {
+      if (threads <= 0) {
+        throw new IllegalArgumentException("threads must be positive");
+      }
+      this.threads = threads;
+      return this;
+    }
+
+    /**
+     * sets the seed of the random hyperplanes, see {@link #hyperplanes(int, int)}, or of the levels of the graph
+     * nodes, see {@link #hnsw(int, int, int)}
+     */
+    public Builder seed(long seed) {
+      this.seed = seed;
+      return this;
+    }
+
+    /**
+     * persists the trained paragraph vectors and the vector of each doc under the given directory; later builds out
+     * of the same reader load them (memory mapping the doc vectors) instead of training again, while they are
+     * trained again if the reader's docs have changed
+     */
+    public Builder modelPath(Path modelPath) {
+      this.modelPath = modelPath;
+      return this;
+    }
+
+    public MinHashParagraphVectorsClassifier build(IndexReader reader, String textField, String categoryField) {
+      return new MinHashParagraphVectorsClassifier(this, reader, textField, categoryField);
+    }
+  }
 }
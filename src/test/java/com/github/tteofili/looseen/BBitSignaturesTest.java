@@ -0,0 +1,46 @@
+package com.github.tteofili.looseen;
+
+import org.apache.lucene.util.LuceneTestCase;
+import org.junit.Test;
+
+/**
+ * Tests for {@link BBitSignatures}
+ */
+public class BBitSignaturesTest extends LuceneTestCase {
+
+    @Test
+    public void testAgreement() throws Exception {
+        long[] signature = new long[atLeast(100)];
+        for (int i = 0; i < signature.length; i++) {
+            signature[i] = random().nextLong();
+        }
+        long[] other = signature.clone();
+        other[0] ^= 1L;
+        other[signature.length - 1] = ~other[signature.length - 1];
+        other[1] ^= Long.MIN_VALUE; // only differs in a bit dropped by any b < 64
+        for (int bits = 1; bits <= Long.SIZE; bits <<= 1) {
+            long[] packed = BBitSignatures.pack(signature, bits);
+            assertEquals(BBitSignatures.words(signature.length, bits), packed.length);
+            assertEquals(signature.length, BBitSignatures.agreement(packed, 0, packed, 0, signature.length, bits));
+            int expected = signature.length - (bits < Long.SIZE ? 2 : 3);
+            assertEquals(expected, BBitSignatures.agreement(packed, 0, BBitSignatures.pack(other, bits), 0,
+                    signature.length, bits));
+        }
+    }
+
+    @Test
+    public void testSimilarity() throws Exception {
+        assertEquals(1f, BBitSignatures.similarity(100, 100, 1), 0f);
+        assertEquals(0f, BBitSignatures.similarity(50, 100, 1), 0f);
+        assertEquals(0f, BBitSignatures.similarity(10, 100, 1), 0f);
+        assertEquals(0.5f, BBitSignatures.similarity(75, 100, 1), 1e-6f);
+        assertEquals(0.5f, BBitSignatures.similarity(50, 100, 64), 0f);
+    }
+
+    @Test
+    public void testCheckBits() throws Exception {
+        expectThrows(IllegalArgumentException.class, () -> BBitSignatures.checkBits(0));
+        expectThrows(IllegalArgumentException.class, () -> BBitSignatures.checkBits(3));
+        expectThrows(IllegalArgumentException.class, () -> BBitSignatures.checkBits(128));
+    }
+}
@@ -0,0 +1,75 @@
+package com.github.tteofili.looseen;
+
+import java.util.List;
+
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.classification.ClassificationResult;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LuceneTestCase;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ClassVoter}
+ */
+public class ClassVoterTest extends LuceneTestCase {
+
+    @Test
+    public void testVoteAcrossSegments() throws Exception {
+        try (RAMDirectory directory = new RAMDirectory()) {
+            IndexWriterConfig config = new IndexWriterConfig(new WhitespaceAnalyzer())
+                    .setMergePolicy(NoMergePolicy.INSTANCE);
+            try (IndexWriter writer = new IndexWriter(directory, config)) {
+                // the segment ordinal of "c" is 1 in both segments, while "b" and "a" share ordinal 0
+                writer.addDocument(doc("b"));
+                writer.addDocument(doc("c"));
+                writer.commit();
+                writer.addDocument(doc("a"));
+                writer.addDocument(doc("c"));
+                writer.commit();
+            }
+            ClassVoter voter = new ClassVoter("class");
+            DirectoryReader reader = DirectoryReader.open(directory);
+            assertEquals(2, reader.leaves().size());
+
+            ScoreDoc[] hits = {new ScoreDoc(3, 1f), new ScoreDoc(0, 0.5f), new ScoreDoc(2, 0.4f),
+                    new ScoreDoc(1, 0.9f)};
+            int[] classes = voter.classes(reader, hits);
+            // classes are returned in the order of the hits, with global ordinals
+            assertEquals(voter.ordinal(new BytesRef("c")), classes[0]);
+            assertEquals(voter.ordinal(new BytesRef("b")), classes[1]);
+            assertEquals(voter.ordinal(new BytesRef("a")), classes[2]);
+            assertEquals(classes[0], classes[3]);
+            assertNotEquals(classes[1], classes[2]);
+            assertEquals(2, voter.cachedSegments());
+
+            // cached mappings are reused
+            assertArrayEquals(classes, voter.classes(reader, hits));
+            assertEquals(2, voter.cachedSegments());
+
+            List<ClassificationResult<BytesRef>> results = voter.vote(reader, hits, 3);
+            assertEquals(3, results.size());
+            assertEquals(new BytesRef("c"), results.get(0).getAssignedClass());
+            for (int i = 1; i < results.size(); i++) {
+                assertTrue(results.get(i - 1).getScore() >= results.get(i).getScore());
+            }
+
+            // mappings are dropped along with the segment cores
+            reader.close();
+            assertEquals(0, voter.cachedSegments());
+        }
+    }
+
+    private static Document doc(String label) {
+        Document document = new Document();
+        document.add(new SortedDocValuesField("class", new BytesRef(label)));
+        return document;
+    }
+}
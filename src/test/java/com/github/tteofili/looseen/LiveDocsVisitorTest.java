@@ -0,0 +1,73 @@
+package com.github.tteofili.looseen;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.LuceneTestCase;
+import org.junit.Test;
+
+/**
+ * Tests for {@link LiveDocsVisitor}
+ */
+public class LiveDocsVisitorTest extends LuceneTestCase {
+
+    @Test
+    public void testVisitLiveDocsOnce() throws Exception {
+        // two segments, the first one spanning three ranges and the second one two
+        int[] segmentSizes = {2500, 1100};
+        // deleted docs sit at the edges of the ranges, the last one is also the last doc of a segment
+        int[] deleted = {0, 1023, 1024, 2047, 2048, 2499, 2500, 2500 + 1024, 3599};
+        try (RAMDirectory directory = new RAMDirectory()) {
+            IndexWriterConfig config = new IndexWriterConfig(new WhitespaceAnalyzer())
+                    .setMergePolicy(NoMergePolicy.INSTANCE);
+            int maxDoc = 0;
+            try (IndexWriter writer = new IndexWriter(directory, config)) {
+                for (int size : segmentSizes) {
+                    for (int i = 0; i < size; i++) {
+                        writer.addDocument(doc(maxDoc++));
+                    }
+                    writer.commit();
+                }
+                for (int id : deleted) {
+                    writer.deleteDocuments(new Term("id", String.valueOf(id)));
+                }
+                writer.commit();
+            }
+            try (DirectoryReader reader = DirectoryReader.open(directory)) {
+                assertEquals(segmentSizes.length, reader.leaves().size());
+                assertEquals(maxDoc, reader.maxDoc());
+                assertEquals(maxDoc - deleted.length, reader.numDocs());
+
+                AtomicIntegerArray visits = new AtomicIntegerArray(maxDoc);
+                LiveDocsVisitor.visit(reader, Collections.singleton("id"), 3, (docId, document) -> {
+                    // docs were added in id order, so top level doc ids match the stored ids
+                    assertEquals(String.valueOf(docId), document.get("id"));
+                    visits.incrementAndGet(docId);
+                });
+
+                for (int id : deleted) {
+                    assertEquals("deleted doc " + id + " was visited", 0, visits.getAndSet(id, 1));
+                }
+                for (int doc = 0; doc < maxDoc; doc++) {
+                    assertEquals("doc " + doc + " was not visited exactly once", 1, visits.get(doc));
+                }
+            }
+        }
+    }
+
+    private static Document doc(int id) {
+        Document document = new Document();
+        document.add(new StringField("id", String.valueOf(id), Field.Store.YES));
+        return document;
+    }
+}
@@ -0,0 +1,61 @@
+package com.github.tteofili.looseen;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.lucene.classification.ClassificationResult;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LuceneTestCase;
+import org.junit.Test;
+
+/**
+ * Tests for {@link LruTextCache}
+ */
+public class LruTextCacheTest extends LuceneTestCase {
+
+    @Test
+    public void testGetAndEvict() throws Exception {
+        LruTextCache<List<ClassificationResult<BytesRef>>> cache = new LruTextCache<>(2);
+        assertNull(cache.get("a", 1));
+        cache.put("a", 1, classes("x"));
+        cache.put("b", 1, classes("y"));
+
+        List<ClassificationResult<BytesRef>> classes = cache.get("a", 1);
+        assertNotNull(classes);
+        assertEquals(new BytesRef("x"), classes.get(0).getAssignedClass());
+        assertNull(cache.get("a", 2)); // values of another version are not returned
+
+        cache.put("c", 1, classes("z")); // evicts "b", the least recently used
+        assertEquals(2, cache.size());
+        assertNull(cache.get("b", 1));
+        assertNotNull(cache.get("a", 1));
+        assertNotNull(cache.get("c", 1));
+
+        assertEquals(3, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+    }
+
+    @Test
+    public void testUnversioned() throws Exception {
+        LruTextCache<float[]> cache = new LruTextCache<>(2);
+        assertNull(cache.get("a"));
+        float[] a = {1f, 2f};
+        assertSame(a, cache.put("a", a));
+        cache.put("b", new float[]{3f, 4f});
+
+        assertSame(a, cache.get("a"));
+        assertNull(cache.get("a", 1));
+
+        cache.put("c", new float[]{5f, 6f}); // evicts "b", the least recently used
+        assertEquals(2, cache.size());
+        assertNull(cache.get("b"));
+        assertArrayEquals(new float[]{5f, 6f}, cache.get("c"), 0f);
+
+        assertEquals(2, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+    }
+
+    private static List<ClassificationResult<BytesRef>> classes(String label) {
+        return Collections.singletonList(new ClassificationResult<>(new BytesRef(label), 1d));
+    }
+}
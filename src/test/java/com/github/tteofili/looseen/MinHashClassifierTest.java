@@ -0,0 +1,302 @@
+package com.github.tteofili.looseen;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.classification.ClassificationResult;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LuceneTestCase;
+import org.junit.Test;
+
+import static com.github.tteofili.looseen.TestExamples.CATEGORY_FIELD;
+import static com.github.tteofili.looseen.TestExamples.EXAMPLES;
+import static com.github.tteofili.looseen.TestExamples.TEXT_FIELD;
+
+/**
+ * Tests for {@link MinHashClassifier}
+ */
+public class MinHashClassifierTest extends LuceneTestCase {
+
+    private static final String COOKING = "the chef cooked fresh pasta with tomato sauce and basil in the kitchen";
+
+    @Test
+    public void testChangeExamplesOnSidecar() throws Exception {
+        try (Directory directory = newDirectory();
+             IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new WhitespaceAnalyzer()))) {
+            TestExamples.addAll(writer);
+            writer.commit();
+            try (DirectoryReader reader = DirectoryReader.open(directory);
+                 // refreshes only happen explicitly
+                 MinHashClassifier classifier = new MinHashClassifier.Builder(2, 1, 16).k(1).cacheSize(10)
+                         .refreshInterval(TimeUnit.HOURS.toMillis(1)).build(reader, TEXT_FIELD, CATEGORY_FIELD)) {
+                assertNotAssigned("cooking", classifier, COOKING);
+                assertEquals(1, classifier.getCache().getMissCount());
+
+                String id = classifier.addExample(COOKING, "cooking");
+                // not visible until refreshed, the cached result is still valid
+                assertNotAssigned("cooking", classifier, COOKING);
+                assertEquals(1, classifier.getCache().getHitCount());
+
+                classifier.refresh();
+                assertAssigned("cooking", classifier, COOKING);
+                assertEquals(2, classifier.getCache().getMissCount());
+
+                classifier.removeExample(id);
+                classifier.refresh();
+                assertNotAssigned("cooking", classifier, COOKING);
+                assertEquals(3, classifier.getCache().getMissCount());
+
+                // the examples of the reader are removed by their doc ids
+                assertAssigned("animals", classifier, EXAMPLES[0][0]);
+                for (int doc = 0; doc < EXAMPLES.length; doc++) {
+                    if ("animals".equals(EXAMPLES[doc][1])) {
+                        classifier.removeExample(String.valueOf(doc));
+                    }
+                }
+                classifier.refresh();
+                assertNotAssigned("animals", classifier, EXAMPLES[0][0]);
+            }
+        }
+    }
+
+    @Test
+    public void testChangeExamplesOnLSHIndex() throws Exception {
+        try (Directory directory = newDirectory();
+             IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new WhitespaceAnalyzer()))) {
+            TestExamples.addAll(writer);
+            writer.commit();
+            try (DirectoryReader reader = DirectoryReader.open(directory);
+                 MinHashClassifier classifier = new MinHashClassifier.Builder(2, 1, 16).k(1).cacheSize(10)
+                         .lsh(8, 2).build(reader, TEXT_FIELD, CATEGORY_FIELD)) {
+                assertNotAssigned("cooking", classifier, COOKING);
+
+                // changes are visible right away, invalidating the cached results
+                String id = classifier.addExample(COOKING, "cooking");
+                assertAssigned("cooking", classifier, COOKING);
+                assertEquals(2, classifier.getCache().getMissCount());
+
+                classifier.removeExample(id);
+                assertNotAssigned("cooking", classifier, COOKING);
+                assertEquals(3, classifier.getCache().getMissCount());
+
+                assertAssigned("animals", classifier, EXAMPLES[0][0]);
+                for (int doc = 0; doc < EXAMPLES.length; doc++) {
+                    if ("animals".equals(EXAMPLES[doc][1])) {
+                        classifier.removeExample(String.valueOf(doc));
+                    }
+                }
+                assertNotAssigned("animals", classifier, EXAMPLES[0][0]);
+                assertEquals(0, classifier.getCache().getHitCount());
+            }
+        }
+    }
+
+    @Test
+    public void testGetClasses() throws Exception {
+        try (Directory directory = newDirectory();
+             IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new WhitespaceAnalyzer()))) {
+            TestExamples.addAll(writer);
+            writer.commit();
+            try (DirectoryReader reader = DirectoryReader.open(directory);
+                 MinHashClassifier classifier = new MinHashClassifier.Builder(2, 1, 16).k(EXAMPLES.length)
+                         .cacheSize(10).build(reader, TEXT_FIELD, CATEGORY_FIELD)) {
+                String text = EXAMPLES[0][0] + " " + EXAMPLES[3][0];
+                List<ClassificationResult<BytesRef>> classes = classifier.getClasses(text);
+                assertTrue(classes.size() > 1);
+                for (int i = 1; i < classes.size(); i++) {
+                    assertTrue(classes.get(i - 1).getScore() >= classes.get(i).getScore());
+                }
+                assertEquals(classifier.assignClass(text).getAssignedClass(), classes.get(0).getAssignedClass());
+
+                List<ClassificationResult<BytesRef>> truncated = classifier.getClasses(text, 1);
+                assertEquals(1, truncated.size());
+                assertEquals(classes.get(0).getAssignedClass(), truncated.get(0).getAssignedClass());
+                assertEquals(classes.size(), classifier.getClasses(text, classes.size() + 1).size());
+
+                // truncated classes are a copy of the cached ones
+                truncated.clear();
+                assertEquals(classes, classifier.getClasses(text));
+                assertTrue(classifier.getCache().getHitCount() > 0);
+            }
+        }
+    }
+
+    @Test
+    public void testClassifyAll() throws Exception {
+        try (Directory directory = newDirectory();
+             IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new WhitespaceAnalyzer()))) {
+            TestExamples.addAll(writer);
+            writer.commit();
+            try (DirectoryReader reader = DirectoryReader.open(directory);
+                 MinHashClassifier classifier = new MinHashClassifier.Builder(2, 1, 16).threads(2)
+                         .build(reader, TEXT_FIELD, CATEGORY_FIELD)) {
+                List<String> texts = new ArrayList<>();
+                for (String[] example : EXAMPLES) {
+                    texts.add(example[0]);
+                }
+                List<ClassificationResult<BytesRef>> results = classifier.classifyAll(texts);
+                assertEquals(texts.size(), results.size());
+                for (int i = 0; i < texts.size(); i++) {
+                    assertEquals(classifier.assignClass(texts.get(i)).getAssignedClass(),
+                            results.get(i).getAssignedClass());
+                }
+                // the owned executor is reused
+                assertEquals(texts.size(), classifier.classifyAll(texts).size());
+            }
+        }
+    }
+
+    @Test
+    public void testClassifyAllFailure() throws Exception {
+        try (Directory directory = newDirectory();
+             IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new WhitespaceAnalyzer()))) {
+            TestExamples.addAll(writer);
+            writer.commit();
+            // a single thread runs the failing text first, while the other ones are still queued
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            List<Future<?>> tasks = new CopyOnWriteArrayList<>();
+            ExecutorService recording = new AbstractExecutorService() {
+                @Override
+                public void execute(Runnable command) {
+                    tasks.add((Future<?>) command);
+                    executor.execute(command);
+                }
+
+                @Override
+                public void shutdown() {
+                    executor.shutdown();
+                }
+
+                @Override
+                public List<Runnable> shutdownNow() {
+                    return executor.shutdownNow();
+                }
+
+                @Override
+                public boolean isShutdown() {
+                    return executor.isShutdown();
+                }
+
+                @Override
+                public boolean isTerminated() {
+                    return executor.isTerminated();
+                }
+
+                @Override
+                public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+                    return executor.awaitTermination(timeout, unit);
+                }
+            };
+            try (DirectoryReader reader = DirectoryReader.open(directory)) {
+                MinHashClassifier classifier = new MinHashClassifier.Builder(2, 1, 16)
+                        .build(reader, TEXT_FIELD, CATEGORY_FIELD);
+                List<String> texts = new ArrayList<>();
+                texts.add(null);
+                for (int i = 0; i < 100; i++) {
+                    texts.add(EXAMPLES[i % EXAMPLES.length][0]);
+                }
+                RuntimeException e = expectThrows(RuntimeException.class,
+                        () -> classifier.classifyAll(texts, recording));
+                assertTrue(e.getCause() instanceof NullPointerException);
+
+                // no task can touch the searchers once they are released and the classifier is closed
+                assertEquals(texts.size(), tasks.size());
+                for (Future<?> task : tasks) {
+                    assertTrue(task.isDone());
+                }
+                classifier.close();
+            } finally {
+                executor.shutdown();
+                assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+            }
+        }
+    }
+
+    @Test
+    public void testShardedClassification() throws Exception {
+        try (Directory directory = newDirectory();
+             IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new WhitespaceAnalyzer()))) {
+            TestExamples.addAll(writer);
+            writer.commit();
+            // voting all the examples, so that ties at the k-th hit can't select different neighbours
+            MinHashClassifier.Builder builder = new MinHashClassifier.Builder(2, 1, 16).k(EXAMPLES.length);
+            try (DirectoryReader reader = DirectoryReader.open(directory);
+                 MinHashClassifier single = builder.build(reader, TEXT_FIELD, CATEGORY_FIELD);
+                 MinHashClassifier sharded = builder.shards(3).build(reader, TEXT_FIELD, CATEGORY_FIELD)) {
+                List<String> texts = new ArrayList<>();
+                for (String[] example : EXAMPLES) {
+                    texts.add(example[0]);
+                }
+                texts.add(EXAMPLES[0][0] + " " + EXAMPLES[3][0]);
+                texts.add("the football team sold shares of the river bank");
+                for (String text : texts) {
+                    assertEquals(scores(single.getClasses(text)), scores(sharded.getClasses(text)));
+                }
+                // each example is its own nearest neighbour, so its class can't be tied with another one
+                for (String[] example : EXAMPLES) {
+                    assertEquals(example[1], sharded.assignClass(example[0]).getAssignedClass().utf8ToString());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCondensedCountsOfReusedSidecar() throws Exception {
+        Path indexPath = createTempDir();
+        try (Directory directory = newDirectory();
+             IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new WhitespaceAnalyzer()))) {
+            TestExamples.addAll(writer);
+            writer.commit();
+            MinHashClassifier.Builder builder = new MinHashClassifier.Builder(2, 1, 16).condense(0.9)
+                    .indexPath(indexPath);
+            try (DirectoryReader reader = DirectoryReader.open(directory)) {
+                try (MinHashClassifier classifier = builder.build(reader, TEXT_FIELD, CATEGORY_FIELD)) {
+                    assertEquals(EXAMPLES.length, classifier.getCondensedExamples().getVisited());
+                    assertTrue(classifier.getCondensedExamples().getKept() > 0);
+                }
+                // the reused sidecar index doesn't visit the examples, so their counts are unknown
+                try (MinHashClassifier classifier = builder.build(reader, TEXT_FIELD, CATEGORY_FIELD)) {
+                    assertEquals(-1, classifier.getCondensedExamples().getVisited());
+                    assertEquals(-1, classifier.getCondensedExamples().getKept());
+                    assertTrue(classifier.toString().contains("condensed=unknown"));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the scores of the given classes by label, rounded so that float sums in different orders compare equal
+     */
+    private static Map<String, Long> scores(List<ClassificationResult<BytesRef>> classes) {
+        Map<String, Long> scores = new HashMap<>();
+        for (ClassificationResult<BytesRef> result : classes) {
+            scores.put(result.getAssignedClass().utf8ToString(), Math.round(result.getScore() * 1e6));
+        }
+        return scores;
+    }
+
+    private static void assertAssigned(String label, MinHashClassifier classifier, String text) throws Exception {
+        ClassificationResult<BytesRef> result = classifier.assignClass(text);
+        assertNotNull(result);
+        assertEquals(label, result.getAssignedClass().utf8ToString());
+    }
+
+    private static void assertNotAssigned(String label, MinHashClassifier classifier, String text) throws Exception {
+        ClassificationResult<BytesRef> result = classifier.assignClass(text);
+        assertTrue(result == null || !label.equals(result.getAssignedClass().utf8ToString()));
+    }
+}
@@ -0,0 +1,72 @@
+package com.github.tteofili.looseen;
+
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.util.LuceneTestCase;
+import org.junit.Test;
+
+/**
+ * Tests for {@link MinHashLSHIndex}
+ */
+public class MinHashLSHIndexTest extends LuceneTestCase {
+
+    @Test
+    public void testSearch() throws Exception {
+        int length = 20;
+        MinHashLSHIndex index = new MinHashLSHIndex(length, 5, 4);
+        long[][] signatures = new long[100][];
+        for (int i = 0; i < signatures.length; i++) {
+            signatures[i] = randomSignature(length);
+            assertEquals(i, index.add(signatures[i], i % 3));
+        }
+        assertEquals(signatures.length, index.size());
+
+        for (int i = 0; i < signatures.length; i++) {
+            ScoreDoc[] hits = index.search(signatures[i], 3);
+            assertTrue(hits.length > 0);
+            assertEquals(i, hits[0].doc);
+            assertEquals(1f, hits[0].score, 0f);
+            assertEquals(i % 3, index.classes(hits)[0]);
+        }
+
+        // only the last band matches
+        long[] query = randomSignature(length);
+        System.arraycopy(signatures[42], 16, query, 16, 4);
+        ScoreDoc[] hits = index.search(query, 3);
+        assertEquals(1, hits.length);
+        assertEquals(42, hits[0].doc);
+        assertEquals(4f / length, hits[0].score, 0f);
+
+        assertEquals(0, index.search(randomSignature(length), 3).length);
+    }
+
+    @Test
+    public void testRemove() throws Exception {
+        int length = 20;
+        MinHashLSHIndex index = new MinHashLSHIndex(length, 5, 4);
+        long[] signature = randomSignature(length);
+        assertEquals(0, index.add(signature, 0));
+        assertEquals(1, index.add(signature, 1));
+        assertEquals(2, index.search(signature, 3).length);
+
+        assertTrue(index.remove(0));
+        assertFalse(index.remove(0));
+        assertEquals(1, index.size());
+        ScoreDoc[] hits = index.search(signature, 3);
+        assertEquals(1, hits.length);
+        assertEquals(1, hits[0].doc);
+        assertEquals(1, index.searchAbove(signature, 0.5f).length);
+
+        assertTrue(index.remove(1));
+        assertEquals(0, index.size());
+        assertEquals(0, index.search(signature, 3).length);
+        expectThrows(IllegalArgumentException.class, () -> index.remove(2));
+    }
+
+    private static long[] randomSignature(int length) {
+        long[] signature = new long[length];
+        for (int i = 0; i < length; i++) {
+            signature[i] = random().nextLong();
+        }
+        return signature;
+    }
+}
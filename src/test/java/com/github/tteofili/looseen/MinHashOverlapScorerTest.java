@@ -0,0 +1,113 @@
+package com.github.tteofili.looseen;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.RandomIndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefArray;
+import org.apache.lucene.util.Counter;
+import org.apache.lucene.util.LuceneTestCase;
+import org.junit.Test;
+
+/**
+ * Tests for {@link MinHashOverlapScorer}
+ */
+public class MinHashOverlapScorerTest extends LuceneTestCase {
+
+    @Test
+    public void testOverlapScoring() throws Exception {
+        Directory dir = newDirectory();
+        RandomIndexWriter w = new RandomIndexWriter(random(), dir, newIndexWriterConfig());
+        w.addDocument(doc("0", "a", "b", "c", "d"));
+        w.addDocument(doc("1", "a", "b", "x", "y"));
+        w.addDocument(doc("2", "x", "y", "z", "w"));
+        w.addDocument(doc("3", "a", "b", "c", "y"));
+        w.deleteDocuments(new Term("id", "3"));
+        DirectoryReader reader = w.getReader();
+        w.close();
+
+        MinHashOverlapScorer query = new MinHashOverlapScorer("hash", terms("a", "b", "c", "d"));
+        ScoreDoc[] hits = query.search(reader, 3);
+        assertEquals(2, hits.length);
+        assertEquals("0", reader.document(hits[0].doc).get("id"));
+        assertEquals(1f, hits[0].score, 0f);
+        assertEquals("1", reader.document(hits[1].doc).get("id"));
+        assertEquals(0.5f, hits[1].score, 0f);
+
+        hits = query.search(reader, 1);
+        assertEquals(1, hits.length);
+        assertEquals("0", reader.document(hits[0].doc).get("id"));
+
+        reader.close();
+        dir.close();
+    }
+
+    @Test
+    public void testCountsReusedAcrossReaders() throws Exception {
+        Directory dir = newDirectory();
+        RandomIndexWriter w = new RandomIndexWriter(random(), dir, newIndexWriterConfig());
+        for (int i = 0; i < 50; i++) {
+            w.addDocument(doc(String.valueOf(i), "a", "b", "n" + i));
+        }
+        DirectoryReader large = w.getReader();
+        w.close();
+
+        Directory smallDir = newDirectory();
+        w = new RandomIndexWriter(random(), smallDir, newIndexWriterConfig());
+        w.addDocument(doc("x", "c", "d"));
+        w.addDocument(doc("y", "a", "c"));
+        DirectoryReader small = w.getReader();
+        w.close();
+
+        MinHashOverlapScorer scorer = new MinHashOverlapScorer("hash", terms("a", "b", "c", "d"));
+        MinHashOverlapScorer.Scratch scratch = new MinHashOverlapScorer.Scratch();
+        ScoreDoc[] hits = scorer.search(large, 3, scratch);
+        assertEquals(3, hits.length);
+        for (int i = 0; i < hits.length; i++) {
+            assertEquals(0.5f, hits[i].score, 0f);
+            if (i > 0) {
+                assertTrue(hits[i - 1].doc < hits[i].doc);
+            }
+        }
+
+        // counts left over by the search on the larger index must not leak into this one
+        hits = scorer.search(small, 3, scratch);
+        assertEquals(2, hits.length);
+        for (ScoreDoc hit : hits) {
+            assertEquals(0.5f, hit.score, 0f);
+        }
+
+        hits = scorer.search(large, 100, scratch);
+        assertEquals(50, hits.length);
+
+        scratch.clear();
+        assertEquals(1, scorer.search(small, 1, scratch).length);
+
+        large.close();
+        small.close();
+        dir.close();
+        smallDir.close();
+    }
+
+    private static Document doc(String id, String... hashes) {
+        Document doc = new Document();
+        doc.add(new StringField("id", id, Field.Store.YES));
+        for (String hash : hashes) {
+            doc.add(new StringField("hash", hash, Field.Store.NO));
+        }
+        return doc;
+    }
+
+    private static BytesRefArray terms(String... hashes) {
+        BytesRefArray terms = new BytesRefArray(Counter.newCounter());
+        for (String hash : hashes) {
+            terms.append(new BytesRef(hash));
+        }
+        return terms;
+    }
+}
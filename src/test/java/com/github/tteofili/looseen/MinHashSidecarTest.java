@@ -0,0 +1,188 @@
+package com.github.tteofili.looseen;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.ThreadInterruptedException;
+import org.junit.Test;
+
+import static com.github.tteofili.looseen.TestExamples.CATEGORY_FIELD;
+import static com.github.tteofili.looseen.TestExamples.ID_FIELD;
+import static com.github.tteofili.looseen.TestExamples.TEXT_FIELD;
+
+/**
+ * Tests for {@link MinHashSidecar}
+ */
+public class MinHashSidecarTest extends LuceneTestCase {
+
+    @Test
+    public void testPersistedSidecarReuse() throws Exception {
+        Path indexPath = createTempDir();
+        try (Directory directory = newDirectory();
+             IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new WhitespaceAnalyzer()))) {
+            TestExamples.addAll(writer);
+            writer.commit();
+            DirectoryReader reader = DirectoryReader.open(directory);
+            try (MinHashSidecar sidecar = new MinHashSidecar.Builder().add(2, 1, 16).indexPath(indexPath)
+                    .build(reader, TEXT_FIELD, CATEGORY_FIELD)) {
+                assertTrue(sidecar.created());
+            }
+            // nothing changed
+            try (MinHashSidecar sidecar = new MinHashSidecar.Builder().add(2, 1, 16).indexPath(indexPath)
+                    .build(reader, TEXT_FIELD, CATEGORY_FIELD)) {
+                assertFalse(sidecar.created());
+            }
+            // a classifier with the same parameters reuses the persisted sidecar index, and can classify
+            try (MinHashClassifier classifier = new MinHashClassifier(reader, TEXT_FIELD, CATEGORY_FIELD, 2, 1, 16,
+                    indexPath)) {
+                assertNotNull(classifier.assignClass(TestExamples.EXAMPLES[0][0]));
+            }
+
+            // the MinHash parameters changed
+            try (MinHashSidecar sidecar = new MinHashSidecar.Builder().add(2, 1, 32).indexPath(indexPath)
+                    .build(reader, TEXT_FIELD, CATEGORY_FIELD)) {
+                assertTrue(sidecar.created());
+            }
+            try (MinHashSidecar sidecar = new MinHashSidecar.Builder().add(2, 1, 32).indexPath(indexPath)
+                    .build(reader, TEXT_FIELD, CATEGORY_FIELD)) {
+                assertFalse(sidecar.created());
+            }
+
+            // a doc of the source reader was deleted
+            writer.deleteDocuments(new Term(ID_FIELD, "0"));
+            writer.commit();
+            DirectoryReader changed = DirectoryReader.openIfChanged(reader);
+            assertNotNull(changed);
+            try (MinHashSidecar sidecar = new MinHashSidecar.Builder().add(2, 1, 32).indexPath(indexPath)
+                    .build(changed, TEXT_FIELD, CATEGORY_FIELD)) {
+                assertTrue(sidecar.created());
+            }
+            changed.close();
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testCommitChanges() throws Exception {
+        Path indexPath = createTempDir();
+        try (Directory directory = newDirectory();
+             IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new WhitespaceAnalyzer()))) {
+            TestExamples.addAll(writer);
+            writer.commit();
+            try (DirectoryReader reader = DirectoryReader.open(directory)) {
+                MinHashSidecar.Builder builder = new MinHashSidecar.Builder().add(2, 1, 16).indexPath(indexPath);
+                try (MinHashSidecar sidecar = builder.build(reader, TEXT_FIELD, CATEGORY_FIELD)) {
+                    assertEquals(0, sidecar.changes());
+                    sidecar.addExample("the chef cooked fresh pasta in the kitchen", "cooking");
+                    sidecar.removeExample("0");
+                    assertEquals(2, sidecar.changes());
+
+                    // the changes are in the latest commit while the sidecar index is still open
+                    sidecar.commit();
+                    try (Directory persisted = new MMapDirectory(indexPath)) {
+                        assertEquals("2", SegmentInfos.readLatestCommit(persisted).getUserData().get("changes"));
+                        try (DirectoryReader persistedReader = DirectoryReader.open(persisted)) {
+                            assertEquals(TestExamples.EXAMPLES.length, persistedReader.numDocs());
+                            assertEquals(TestExamples.EXAMPLES.length + 1, persistedReader.maxDoc());
+                        }
+                    }
+                }
+                // the committed changes are kept by a reused sidecar index, and dropped when it gets rebuilt
+                try (MinHashSidecar sidecar = builder.build(reader, TEXT_FIELD, CATEGORY_FIELD)) {
+                    assertFalse(sidecar.created());
+                    assertEquals(2, sidecar.changes());
+                }
+                try (MinHashSidecar sidecar = builder.add(2, 1, 32).build(reader, TEXT_FIELD, CATEGORY_FIELD)) {
+                    assertTrue(sidecar.created());
+                    assertEquals(0, sidecar.changes());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testShardedVersion() throws Exception {
+        try (Directory directory = newDirectory();
+             IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new WhitespaceAnalyzer()))) {
+            TestExamples.addAll(writer);
+            writer.commit();
+            try (DirectoryReader reader = DirectoryReader.open(directory);
+                 MinHashSidecar sidecar = new MinHashSidecar.Builder().add(2, 1, 16).shards(3)
+                         .refreshInterval(TimeUnit.HOURS.toMillis(1)).build(reader, TEXT_FIELD, CATEGORY_FIELD)) {
+                long version = version(sidecar);
+                // the ids "0", "1" and "2" are hashed to a different shard each
+                for (int doc = 0; doc < 3; doc++) {
+                    sidecar.removeExample(String.valueOf(doc));
+                    sidecar.refresh();
+                    long changed = version(sidecar);
+                    assertTrue(changed > version);
+                    version = changed;
+                }
+                sidecar.addExample("the chef cooked fresh pasta in the kitchen", "cooking");
+                sidecar.refresh();
+                assertTrue(version(sidecar) > version);
+                version = version(sidecar);
+
+                // refreshing without changes keeps the version
+                sidecar.refresh();
+                assertEquals(version, version(sidecar));
+            }
+        }
+    }
+
+    @Test
+    public void testShardFailure() throws Exception {
+        try (Directory directory = newDirectory();
+             IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new WhitespaceAnalyzer()))) {
+            TestExamples.addAll(writer);
+            writer.commit();
+            try (DirectoryReader reader = DirectoryReader.open(directory);
+                 MinHashSidecar sidecar = new MinHashSidecar.Builder().add(2, 1, 16).shards(3)
+                         .build(reader, TEXT_FIELD, CATEGORY_FIELD)) {
+                IndexSearcher[] searchers = sidecar.acquire();
+                AtomicInteger running = new AtomicInteger();
+                try {
+                    // the first shard is searched by the calling thread, the others are still running when it fails
+                    expectThrows(IOException.class, () -> sidecar.vote(searchers, (shardReader, scratch) -> {
+                        if (shardReader == searchers[0].getIndexReader()) {
+                            throw new IOException("failed shard");
+                        }
+                        running.incrementAndGet();
+                        try {
+                            Thread.sleep(100);
+                        } catch (InterruptedException e) {
+                            throw new ThreadInterruptedException(e);
+                        }
+                        running.decrementAndGet();
+                        return new ScoreDoc[0];
+                    }, 3, null));
+                    assertEquals(0, running.get());
+                } finally {
+                    sidecar.release(searchers);
+                }
+            }
+        }
+    }
+
+    private static long version(MinHashSidecar sidecar) throws Exception {
+        IndexSearcher[] searchers = sidecar.acquire();
+        try {
+            return MinHashSidecar.version(searchers);
+        } finally {
+            sidecar.release(searchers);
+        }
+    }
+}
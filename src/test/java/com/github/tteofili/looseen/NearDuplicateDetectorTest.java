@@ -0,0 +1,100 @@
+package com.github.tteofili.looseen;
+
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.classification.ClassificationResult;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LuceneTestCase;
+import org.junit.Test;
+
+/**
+ * Tests for {@link NearDuplicateDetector}
+ */
+public class NearDuplicateDetectorTest extends LuceneTestCase {
+
+    private static final String FOX = "the quick brown fox jumps over the lazy dog near the old river bank";
+    private static final String FOX_CAT = "the quick brown fox jumps over the lazy cat near the old river bank";
+    private static final String LOREM = "lorem ipsum dolor sit amet consectetur adipiscing elit sed do eiusmod";
+
+    @Test
+    public void testFindNearDuplicates() throws Exception {
+        try (NearDuplicateDetector detector = new NearDuplicateDetector(2, 1, 64, 16, 4)) {
+            assertEquals(0, detector.add(FOX));
+            assertEquals(1, detector.add(LOREM));
+            assertEquals(2, detector.add("single"));
+
+            ScoreDoc[] duplicates = detector.findNearDuplicates(FOX, 0.9);
+            assertEquals(1, duplicates.length);
+            assertEquals(0, duplicates[0].doc);
+            assertEquals(1f, duplicates[0].score, 0f);
+
+            duplicates = detector.findNearDuplicates(FOX_CAT, 0.5);
+            assertEquals(1, duplicates.length);
+            assertEquals(0, duplicates[0].doc);
+            assertTrue(duplicates[0].score < 1f);
+
+            assertEquals(0, detector.findNearDuplicates("single", 0.5).length);
+        }
+    }
+
+    @Test
+    public void testDeduplicate() throws Exception {
+        try (NearDuplicateDetector detector = new NearDuplicateDetector(2, 1, 64, 16, 4)) {
+            Iterator<NearDuplicateDetector.Duplicate> duplicates = detector.deduplicate(
+                    Arrays.asList(FOX, LOREM, FOX_CAT, LOREM, FOX).iterator(), 0.5);
+
+            NearDuplicateDetector.Duplicate duplicate = duplicates.next();
+            assertEquals(2, duplicate.getId());
+            assertEquals(0, duplicate.getCluster());
+
+            duplicate = duplicates.next();
+            assertEquals(3, duplicate.getId());
+            assertEquals(1, duplicate.getCluster());
+            assertEquals(1f, duplicate.getSimilarity(), 0f);
+
+            duplicate = duplicates.next();
+            assertEquals(4, duplicate.getId());
+            assertEquals(0, duplicate.getCluster());
+
+            assertFalse(duplicates.hasNext());
+            assertEquals(5, detector.size());
+
+            List<NearDuplicateDetector.Cluster> clusters = detector.clusters();
+            assertEquals(2, clusters.size());
+            assertEquals(0, clusters.get(0).getRepresentative());
+            assertArrayEquals(new int[]{0, 2, 4}, clusters.get(0).getMembers());
+            assertEquals(1, clusters.get(1).getRepresentative());
+            assertArrayEquals(new int[]{1, 3}, clusters.get(1).getMembers());
+        }
+    }
+
+    @Test
+    public void testSharedSignatures() throws Exception {
+        List<Map.Entry<String, String>> examples = Arrays.asList(
+                new AbstractMap.SimpleEntry<>(FOX, "animals"), new AbstractMap.SimpleEntry<>(LOREM, "latin"));
+        try (MinHashClassifier classifier = new MinHashClassifier.Builder(2, 1, 64).lsh(16, 4)
+                .build(examples.iterator())) {
+            SignatureGenerator generator = classifier.getSignatureGenerator();
+            assertNotNull(generator);
+            try (NearDuplicateDetector detector = new NearDuplicateDetector(generator, 16, 4)) {
+                // the text is hashed once, both to be deduplicated and to be classified
+                long[] signature = generator.signature(FOX_CAT);
+                assertEquals(0, detector.findNearDuplicates(signature, 0.5).length);
+                assertEquals(0, detector.add(signature));
+                assertEquals(1, detector.findNearDuplicates(generator.signature(FOX), 0.5).length);
+
+                List<ClassificationResult<BytesRef>> classes = classifier.getClasses(signature);
+                assertEquals("animals", classes.get(0).getAssignedClass().utf8ToString());
+                assertEquals(classifier.assignClass(FOX_CAT).getAssignedClass(), classes.get(0).getAssignedClass());
+                expectThrows(IllegalArgumentException.class, () -> detector.add(new long[3]));
+            }
+            // the shared generator is not closed along with the detector
+            assertNotNull(classifier.assignClass(FOX));
+        }
+    }
+}
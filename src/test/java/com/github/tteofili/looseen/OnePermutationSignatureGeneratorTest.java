@@ -0,0 +1,41 @@
+package com.github.tteofili.looseen;
+
+import org.apache.lucene.util.LuceneTestCase;
+import org.junit.Test;
+
+/**
+ * Tests for {@link OnePermutationSignatureGenerator}
+ */
+public class OnePermutationSignatureGeneratorTest extends LuceneTestCase {
+
+    private static final String FOX = "the quick brown fox jumps over the lazy dog near the old river bank";
+    private static final String FOX_CAT = "the quick brown fox jumps over the lazy cat near the old river bank";
+    private static final String LOREM = "lorem ipsum dolor sit amet consectetur adipiscing elit sed do eiusmod";
+
+    @Test
+    public void testSignature() throws Exception {
+        try (OnePermutationSignatureGenerator generator = new OnePermutationSignatureGenerator(2, 64)) {
+            assertEquals(64, generator.length());
+            assertNull(generator.signature("single"));
+
+            long[] fox = generator.signature(FOX);
+            assertEquals(64, fox.length);
+            assertArrayEquals(fox, generator.signature(FOX));
+
+            int similar = agreement(fox, generator.signature(FOX_CAT));
+            int different = agreement(fox, generator.signature(LOREM));
+            assertTrue(similar > different);
+            assertTrue(similar < fox.length);
+        }
+    }
+
+    private static int agreement(long[] a, long[] b) {
+        int agreement = 0;
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] == b[i]) {
+                agreement++;
+            }
+        }
+        return agreement;
+    }
+}
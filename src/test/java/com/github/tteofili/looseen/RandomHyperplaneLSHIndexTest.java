@@ -0,0 +1,50 @@
+package com.github.tteofili.looseen;
+
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.util.LuceneTestCase;
+import org.junit.Test;
+
+/**
+ * Tests for {@link RandomHyperplaneLSHIndex}
+ */
+public class RandomHyperplaneLSHIndexTest extends LuceneTestCase {
+
+    @Test
+    public void testSearch() throws Exception {
+        int dimensions = 32;
+        RandomHyperplaneLSHIndex index = new RandomHyperplaneLSHIndex(dimensions, 8, 8, random().nextLong());
+        float[][] vectors = new float[atLeast(100)][];
+        for (int i = 0; i < vectors.length; i++) {
+            vectors[i] = randomVector(dimensions);
+            assertEquals(i, index.add(vectors[i], i % 3));
+        }
+        assertEquals(vectors.length, index.size());
+        assertFalse(index.supportsConcurrentAdds());
+
+        for (int i = 0; i < vectors.length; i++) {
+            // scaling doesn't change the cosine similarity
+            float[] query = vectors[i].clone();
+            for (int d = 0; d < dimensions; d++) {
+                query[d] *= 2;
+            }
+            ScoreDoc[] hits = index.search(query, 3);
+            assertTrue(hits.length > 0);
+            assertEquals(i, hits[0].doc);
+            assertEquals(1f, hits[0].score, 1e-5f);
+            assertEquals(i % 3, index.classes(hits)[0]);
+            for (int h = 1; h < hits.length; h++) {
+                assertTrue(hits[h - 1].score >= hits[h].score);
+            }
+        }
+
+        expectThrows(IllegalArgumentException.class, () -> index.search(new float[dimensions + 1], 3));
+    }
+
+    private static float[] randomVector(int dimensions) {
+        float[] vector = new float[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] = (float) random().nextGaussian();
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,63 @@
+package com.github.tteofili.looseen;
+
+import org.apache.lucene.document.BinaryDocValuesField;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.RandomIndexWriter;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.LuceneTestCase;
+import org.junit.Test;
+
+/**
+ * Tests for {@link SignatureReranker}
+ */
+public class SignatureRerankerTest extends LuceneTestCase {
+
+    @Test
+    public void testPack() throws Exception {
+        long[] signature = {0L, -1L, Long.MIN_VALUE, Long.MAX_VALUE, random().nextLong()};
+        assertEquals(signature.length, SignatureReranker.agreement(signature, SignatureReranker.pack(signature)));
+        long[] other = signature.clone();
+        other[1] = 1L;
+        other[4] = ~other[4];
+        assertEquals(signature.length - 2, SignatureReranker.agreement(other, SignatureReranker.pack(signature)));
+    }
+
+    @Test
+    public void testRerank() throws Exception {
+        Directory dir = newDirectory();
+        RandomIndexWriter w = new RandomIndexWriter(random(), dir, newIndexWriterConfig());
+        w.addDocument(doc("0", new long[]{1, 2, 3, 4}));
+        w.addDocument(doc("1", new long[]{1, 2, 3, 5}));
+        w.addDocument(doc("2", new long[]{1, 6, 7, 8}));
+        w.addDocument(doc("3", null));
+        DirectoryReader reader = w.getReader();
+        w.close();
+
+        ScoreDoc[] candidates = new ScoreDoc[reader.maxDoc()];
+        for (int i = 0; i < candidates.length; i++) {
+            candidates[i] = new ScoreDoc(i, 1f);
+        }
+        ScoreDoc[] hits = SignatureReranker.rerank(reader, "signature", new long[]{1, 2, 3, 5}, candidates, 2);
+        assertEquals(2, hits.length);
+        assertEquals("1", reader.document(hits[0].doc).get("id"));
+        assertEquals(1f, hits[0].score, 0f);
+        assertEquals("0", reader.document(hits[1].doc).get("id"));
+        assertEquals(0.75f, hits[1].score, 0f);
+
+        reader.close();
+        dir.close();
+    }
+
+    private static Document doc(String id, long[] signature) {
+        Document doc = new Document();
+        doc.add(new StringField("id", id, Field.Store.YES));
+        if (signature != null) {
+            doc.add(new BinaryDocValuesField("signature", SignatureReranker.pack(signature)));
+        }
+        return doc;
+    }
+}
@@ -0,0 +1,58 @@
+package com.github.tteofili.looseen;
+
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.util.LuceneTestCase;
+import org.junit.Test;
+
+/**
+ * Tests for {@link SimHashIndex}
+ */
+public class SimHashIndexTest extends LuceneTestCase {
+
+    @Test
+    public void testSearch() throws Exception {
+        for (int bits : new int[]{64, 128}) {
+            int maxDistance = 3;
+            SimHashIndex index = new SimHashIndex(bits, maxDistance);
+            long[][] fingerprints = new long[atLeast(50)][];
+            for (int i = 0; i < fingerprints.length; i++) {
+                fingerprints[i] = randomFingerprint(bits);
+                assertEquals(i, index.add(fingerprints[i], i % 3));
+            }
+            assertEquals(fingerprints.length, index.size());
+
+            for (int i = 0; i < fingerprints.length; i++) {
+                ScoreDoc[] hits = index.search(fingerprints[i], 3);
+                assertTrue(hits.length > 0);
+                assertEquals(i, hits[0].doc);
+                assertEquals(1f, hits[0].score, 0f);
+                assertEquals(i % 3, index.classes(hits)[0]);
+            }
+
+            // flipping bits spread over all the blocks is found up to the max distance, and never beyond it
+            for (int distance = 1; distance <= maxDistance + 1; distance++) {
+                long[] query = fingerprints[7].clone();
+                for (int i = 0; i < distance; i++) {
+                    int bit = i * bits / distance;
+                    query[bit >>> 6] ^= 1L << (bit & 63);
+                }
+                ScoreDoc[] hits = index.search(query, 1);
+                if (distance <= maxDistance) {
+                    assertEquals(1, hits.length);
+                    assertEquals(7, hits[0].doc);
+                    assertEquals(1f - distance / (float) bits, hits[0].score, 0f);
+                } else {
+                    assertEquals(0, hits.length);
+                }
+            }
+        }
+    }
+
+    private static long[] randomFingerprint(int bits) {
+        long[] fingerprint = new long[bits / Long.SIZE];
+        for (int i = 0; i < fingerprint.length; i++) {
+            fingerprint[i] = random().nextLong();
+        }
+        return fingerprint;
+    }
+}
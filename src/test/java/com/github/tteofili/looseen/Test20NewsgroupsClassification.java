@@ -140,6 +140,7 @@ public final class Test20NewsgroupsClassification extends LuceneTestCase {
 
         IndexReader reader = null;
         List<Classifier<BytesRef>> classifiers = new LinkedList<>();
+        MinHashSidecar sidecar = null;
         try {
             Analyzer analyzer = new StandardAnalyzer();
             if (index) {
@@ -193,10 +194,17 @@ public final class Test20NewsgroupsClassification extends LuceneTestCase {
             classifiers.add(new KNearestNeighborClassifier(reader, new DFRSimilarity(new BasicModelP(), new AfterEffectL(), new NormalizationH3()), analyzer, null, 3, 1, 1, CATEGORY_FIELD, BODY_FIELD));
             classifiers.add(new KNearestNeighborClassifier(reader, new IBSimilarity(new DistributionSPL(), new LambdaDF(), new Normalization.NoNormalization()), analyzer, null, 3, 1, 1, CATEGORY_FIELD, BODY_FIELD));
             classifiers.add(new KNearestNeighborClassifier(reader, new IBSimilarity(new DistributionLL(), new LambdaTTF(), new NormalizationH1()), analyzer, null, 3, 1, 1, CATEGORY_FIELD, BODY_FIELD));
-            classifiers.add(new MinHashClassifier(reader, BODY_FIELD, CATEGORY_FIELD, 15, 1, 100));
-            classifiers.add(new MinHashClassifier(reader, BODY_FIELD, CATEGORY_FIELD, 30, 3, 300));
-            classifiers.add(new MinHashClassifier(reader, BODY_FIELD, CATEGORY_FIELD, 10, 1, 100));
-//            classifiers.add(new MinHashParagraphVectorsClassifier(reader, BODY_FIELD, CATEGORY_FIELD, 10, 1, 100));
+            sidecar = new MinHashSidecar.Builder().add(15, 1, 100).add(30, 3, 300).add(10, 1, 100)
+                    .build(reader, BODY_FIELD, CATEGORY_FIELD);
+            classifiers.add(sidecar.classifier(15, 1, 100));
+            classifiers.add(sidecar.classifier(30, 3, 300));
+            classifiers.add(sidecar.classifier(10, 1, 100));
+            classifiers.add(new MinHashClassifier.Builder(10, 1, 100).lsh(20, 5).build(reader, BODY_FIELD, CATEGORY_FIELD));
+            // paragraph vectors are only trained on the first run, later runs load them from the model path
+            classifiers.add(new MinHashParagraphVectorsClassifier.Builder(10, 1, 100).hyperplanes(8, 12)
+                    .modelPath(Paths.get(PREFIX + "/20n/paragraph-vectors")).build(reader, BODY_FIELD, CATEGORY_FIELD));
+            classifiers.add(new MinHashParagraphVectorsClassifier.Builder(10, 1, 100).hnsw(16, 100, 50)
+                    .modelPath(Paths.get(PREFIX + "/20n/paragraph-vectors")).build(reader, BODY_FIELD, CATEGORY_FIELD));
             classifiers.add(new KNearestFuzzyClassifier(reader, new LMJelinekMercerSimilarity(0.3f), analyzer, null, 1, CATEGORY_FIELD, BODY_FIELD));
             classifiers.add(new KNearestFuzzyClassifier(reader, new IBSimilarity(new DistributionLL(), new LambdaTTF(), new NormalizationH1()), analyzer, null, 1, CATEGORY_FIELD, BODY_FIELD));
             classifiers.add(new KNearestFuzzyClassifier(reader, new ClassicSimilarity(), analyzer, null, 1, CATEGORY_FIELD, BODY_FIELD));
@@ -255,6 +263,9 @@ public final class Test20NewsgroupsClassification extends LuceneTestCase {
                     ((Closeable) c).close();
                 }
             }
+            if (sidecar != null) {
+                sidecar.close();
+            }
         }
     }
 
@@ -0,0 +1,52 @@
+package com.github.tteofili.looseen;
+
+import java.io.IOException;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+
+/**
+ * a few labelled texts, of three clearly separated classes, shared by the tests of the classifiers and of the indexes
+ * they are built on
+ */
+final class TestExamples {
+
+    static final String ID_FIELD = "id";
+    static final String TEXT_FIELD = "body";
+    static final String CATEGORY_FIELD = "category";
+
+    static final String[][] EXAMPLES = {
+            {"the quick brown fox jumps over the lazy dog near the old river bank", "animals"},
+            {"a lazy dog sleeps under the old tree near the quiet river bank", "animals"},
+            {"the brown fox hunts small rabbits in the green fields at dawn", "animals"},
+            {"stock markets fell sharply as investors sold shares of large banks", "finance"},
+            {"the central bank raised interest rates to fight rising inflation", "finance"},
+            {"investors bought government bonds as stock prices kept falling", "finance"},
+            {"the home team scored a late goal to win the football match", "sports"},
+            {"fans cheered as the football team won the league title again", "sports"},
+            {"the tennis player won the final match in three straight sets", "sports"},
+    };
+
+    private TestExamples() {
+    }
+
+    /**
+     * adds all the examples, the id of each doc is the position of its example
+     */
+    static void addAll(IndexWriter writer) throws IOException {
+        for (int i = 0; i < EXAMPLES.length; i++) {
+            writer.addDocument(document(String.valueOf(i), EXAMPLES[i][0], EXAMPLES[i][1]));
+        }
+    }
+
+    static Document document(String id, String text, String label) {
+        Document document = new Document();
+        document.add(new StringField(ID_FIELD, id, Field.Store.YES));
+        document.add(new TextField(TEXT_FIELD, text, Field.Store.YES));
+        document.add(new StringField(CATEGORY_FIELD, label, Field.Store.YES));
+        return document;
+    }
+}
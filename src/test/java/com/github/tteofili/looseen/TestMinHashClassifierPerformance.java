@@ -0,0 +1,423 @@
+package com.github.tteofili.looseen;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.carrotsearch.randomizedtesting.annotations.TimeoutSuite;
+import com.github.tteofili.looseen.dl4j.MinHashParagraphVectorsClassifier;
+import org.apache.lucene.classification.ClassificationResult;
+import org.apache.lucene.classification.Classifier;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.TimeUnits;
+import org.junit.Test;
+
+/**
+ * latency and throughput measurements of {@link MinHashClassifier} (and the other LSH based classifiers) on the 20
+ * Newsgroups train / test split created by {@link Test20NewsgroupsClassification}
+ */
+@LuceneTestCase.SuppressSysoutChecks(bugUrl = "none")
+@TimeoutSuite(millis = 365 * 24 * TimeUnits.HOUR)
+@LuceneTestCase.Monster("takes a lot!")
+public final class TestMinHashClassifierPerformance extends LuceneTestCase {
+
+    private static final String PREFIX = "/Users/teofili/data";
+    private static final String INDEX = PREFIX + "/20n/index";
+
+    private static final String CATEGORY_FIELD = "category";
+    private static final String BODY_FIELD = "body";
+
+    private static final int MAX_TEST_DOCS = 2000;
+
+    @Test
+    public void testConcurrentAssignClass() throws Exception {
+        try (Directory train = FSDirectory.open(Paths.get(INDEX + "/train"));
+             Directory test = FSDirectory.open(Paths.get(INDEX + "/test"));
+             IndexReader reader = DirectoryReader.open(train);
+             IndexReader testReader = DirectoryReader.open(test);
+             MinHashClassifier classifier = new MinHashClassifier(reader, BODY_FIELD, CATEGORY_FIELD, 10, 1, 100)) {
+            List<String> texts = readTexts(testReader);
+            for (int threads : new int[]{1, 8, 32}) {
+                long[] latencies = classify(classifier, texts, threads);
+                System.out.format("%s with %d threads: %s%n", classifier, threads, describe(latencies));
+            }
+        }
+    }
+
+    @Test
+    public void testParallelBuild() throws Exception {
+        try (Directory train = FSDirectory.open(Paths.get(INDEX + "/train"));
+             IndexReader reader = DirectoryReader.open(train)) {
+            for (int threads : new int[]{1, 2, 4, 8}) {
+                long start = System.nanoTime();
+                MinHashClassifier classifier = new MinHashClassifier.Builder(10, 1, 100).threads(threads)
+                        .build(reader, BODY_FIELD, CATEGORY_FIELD);
+                long elapsed = System.nanoTime() - start;
+                System.out.format("%s built with %d threads in %dms%n", classifier, threads, elapsed / 1000000);
+                classifier.close();
+            }
+        }
+    }
+
+    @Test
+    public void testShardedAssignClass() throws Exception {
+        try (Directory train = FSDirectory.open(Paths.get(INDEX + "/train"));
+             Directory test = FSDirectory.open(Paths.get(INDEX + "/test"));
+             IndexReader reader = DirectoryReader.open(train);
+             IndexReader testReader = DirectoryReader.open(test)) {
+            List<String> texts = readTexts(testReader);
+            for (int shards : new int[]{1, 2, 4, 8}) {
+                try (MinHashClassifier classifier = new MinHashClassifier.Builder(10, 1, 100).shards(shards)
+                        .build(reader, BODY_FIELD, CATEGORY_FIELD)) {
+                    long[] latencies = classify(classifier, texts, 1);
+                    System.out.format("%s with %d shards: %s%n", classifier, shards, describe(latencies));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRerank() throws Exception {
+        try (Directory train = FSDirectory.open(Paths.get(INDEX + "/train"));
+             Directory test = FSDirectory.open(Paths.get(INDEX + "/test"));
+             IndexReader reader = DirectoryReader.open(train);
+             IndexReader testReader = DirectoryReader.open(test)) {
+            List<String> texts = readTexts(testReader);
+            List<String> categories = readCategories(testReader);
+            for (int rerank : new int[]{0, 10, 50}) {
+                MinHashClassifier.Builder builder = new MinHashClassifier.Builder(10, 1, 100);
+                if (rerank > 0) {
+                    builder.rerank(rerank);
+                }
+                try (MinHashClassifier classifier = builder.build(reader, BODY_FIELD, CATEGORY_FIELD)) {
+                    long[] latencies = classify(classifier, texts, 1);
+                    System.out.format("%s: %s, accuracy = %.4f%n", classifier, describe(latencies),
+                            accuracy(classifier, texts, categories));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSharedSidecarBuild() throws Exception {
+        int[][] parameters = {{15, 1, 100}, {30, 3, 300}, {10, 1, 100}};
+        try (Directory train = FSDirectory.open(Paths.get(INDEX + "/train"));
+             IndexReader reader = DirectoryReader.open(train)) {
+            long start = System.nanoTime();
+            for (int[] p : parameters) {
+                new MinHashClassifier(reader, BODY_FIELD, CATEGORY_FIELD, p[0], p[1], p[2]).close();
+            }
+            System.out.format("%d sidecars built in %dms%n", parameters.length, (System.nanoTime() - start) / 1000000);
+
+            start = System.nanoTime();
+            MinHashSidecar.Builder builder = new MinHashSidecar.Builder();
+            for (int[] p : parameters) {
+                builder.add(p[0], p[1], p[2]);
+            }
+            try (MinHashSidecar sidecar = builder.build(reader, BODY_FIELD, CATEGORY_FIELD)) {
+                System.out.format("%s built in %dms%n", sidecar, (System.nanoTime() - start) / 1000000);
+            }
+        }
+    }
+
+    @Test
+    public void testBatchThroughput() throws Exception {
+        try (Directory train = FSDirectory.open(Paths.get(INDEX + "/train"));
+             Directory test = FSDirectory.open(Paths.get(INDEX + "/test"));
+             IndexReader reader = DirectoryReader.open(train);
+             IndexReader testReader = DirectoryReader.open(test);
+             MinHashClassifier classifier = new MinHashClassifier(reader, BODY_FIELD, CATEGORY_FIELD, 10, 1, 100)) {
+            List<String> texts = readTexts(testReader);
+
+            long start = System.nanoTime();
+            for (String text : texts) {
+                classifier.assignClass(text);
+            }
+            System.out.format("%s sequential: %.2f docs/sec%n", classifier, throughput(texts.size(), start));
+
+            start = System.nanoTime();
+            classifier.classifyAll(texts);
+            System.out.format("%s batch: %.2f docs/sec%n", classifier, throughput(texts.size(), start));
+        }
+    }
+
+    @Test
+    public void testParagraphVectorsBatchThroughput() throws Exception {
+        try (Directory train = FSDirectory.open(Paths.get(INDEX + "/train"));
+             Directory test = FSDirectory.open(Paths.get(INDEX + "/test"));
+             IndexReader reader = DirectoryReader.open(train);
+             IndexReader testReader = DirectoryReader.open(test);
+             MinHashParagraphVectorsClassifier classifier = new MinHashParagraphVectorsClassifier.Builder(10, 1, 100)
+                     .exact().modelPath(Paths.get(PREFIX + "/20n/paragraph-vectors"))
+                     .build(reader, BODY_FIELD, CATEGORY_FIELD)) {
+            List<String> texts = readTexts(testReader);
+
+            long start = System.nanoTime();
+            for (String text : texts) {
+                classifier.assignClass(text);
+            }
+            System.out.format("%s sequential: %.2f docs/sec%n", classifier, throughput(texts.size(), start));
+
+            for (int threads : new int[]{2, 4, 8, 16}) {
+                ExecutorService executor = Executors.newFixedThreadPool(threads);
+                try {
+                    start = System.nanoTime();
+                    classifier.classifyAll(texts, executor);
+                    System.out.format("%s batch with %d threads: %.2f docs/sec%n", classifier, threads,
+                            throughput(texts.size(), start));
+                } finally {
+                    executor.shutdown();
+                }
+            }
+        }
+        try (Directory train = FSDirectory.open(Paths.get(INDEX + "/train"));
+             Directory test = FSDirectory.open(Paths.get(INDEX + "/test"));
+             IndexReader reader = DirectoryReader.open(train);
+             IndexReader testReader = DirectoryReader.open(test);
+             MinHashParagraphVectorsClassifier classifier = new MinHashParagraphVectorsClassifier.Builder(10, 1, 100)
+                     .exact().cacheSize(MAX_TEST_DOCS).modelPath(Paths.get(PREFIX + "/20n/paragraph-vectors"))
+                     .build(reader, BODY_FIELD, CATEGORY_FIELD)) {
+            List<String> texts = readTexts(testReader);
+            for (String phase : new String[]{"cold", "cached"}) {
+                long start = System.nanoTime();
+                classifier.classifyAll(texts);
+                System.out.format("%s %s batch: %.2f docs/sec%n", classifier, phase, throughput(texts.size(), start));
+            }
+            System.out.println(classifier.getCache());
+        }
+    }
+
+    @Test
+    public void testCachedAssignClass() throws Exception {
+        try (Directory train = FSDirectory.open(Paths.get(INDEX + "/train"));
+             Directory test = FSDirectory.open(Paths.get(INDEX + "/test"));
+             IndexReader reader = DirectoryReader.open(train);
+             IndexReader testReader = DirectoryReader.open(test);
+             MinHashClassifier classifier = new MinHashClassifier.Builder(10, 1, 100).cacheSize(MAX_TEST_DOCS)
+                     .build(reader, BODY_FIELD, CATEGORY_FIELD)) {
+            List<String> texts = readTexts(testReader);
+            System.out.format("%s cold: %s%n", classifier, describe(classify(classifier, texts, 1)));
+            System.out.format("%s cached: %s%n", classifier, describe(classify(classifier, texts, 1)));
+            System.out.println(classifier.getCache());
+        }
+    }
+
+    @Test
+    public void testOnePermutation() throws Exception {
+        try (Directory train = FSDirectory.open(Paths.get(INDEX + "/train"));
+             Directory test = FSDirectory.open(Paths.get(INDEX + "/test"));
+             IndexReader reader = DirectoryReader.open(train);
+             IndexReader testReader = DirectoryReader.open(test)) {
+            List<String> texts = readTexts(testReader);
+            List<String> categories = readCategories(testReader);
+            try (SignatureGenerator minHash = new MinHashSignatureGenerator(10, 1, 100);
+                 SignatureGenerator onePermutation = new OnePermutationSignatureGenerator(10, 100)) {
+                for (SignatureGenerator generator : new SignatureGenerator[]{minHash, onePermutation}) {
+                    long start = System.nanoTime();
+                    for (String text : texts) {
+                        generator.signature(text);
+                    }
+                    System.out.format("%s: %.2f docs/sec%n", generator, throughput(texts.size(), start));
+                }
+            }
+            for (boolean lsh : new boolean[]{false, true}) {
+                for (boolean onePermutation : new boolean[]{false, true}) {
+                    MinHashClassifier.Builder builder = new MinHashClassifier.Builder(10, 1, 100);
+                    if (lsh) {
+                        builder.lsh(20, 5);
+                    }
+                    if (onePermutation) {
+                        builder.onePermutation();
+                    }
+                    long start = System.nanoTime();
+                    try (MinHashClassifier classifier = builder.build(reader, BODY_FIELD, CATEGORY_FIELD)) {
+                        long elapsed = System.nanoTime() - start;
+                        long[] latencies = classify(classifier, texts, 1);
+                        System.out.format("%s built in %dms: %s, accuracy = %.4f%n", classifier, elapsed / 1000000,
+                                describe(latencies), accuracy(classifier, texts, categories));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testBBit() throws Exception {
+        try (Directory train = FSDirectory.open(Paths.get(INDEX + "/train"));
+             Directory test = FSDirectory.open(Paths.get(INDEX + "/test"));
+             IndexReader reader = DirectoryReader.open(train);
+             IndexReader testReader = DirectoryReader.open(test)) {
+            List<String> texts = readTexts(testReader);
+            List<String> categories = readCategories(testReader);
+            for (int bits : new int[]{64, 8, 4, 2, 1}) {
+                try (MinHashClassifier classifier = new MinHashClassifier.Builder(10, 1, 100).lsh(20, 5).bits(bits)
+                        .build(reader, BODY_FIELD, CATEGORY_FIELD)) {
+                    long[] latencies = classify(classifier, texts, 1);
+                    System.out.format("%s: %d signature bytes per doc, %s, accuracy = %.4f%n", classifier,
+                            BBitSignatures.words(100, bits) * Long.BYTES, describe(latencies),
+                            accuracy(classifier, texts, categories));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSimHash() throws Exception {
+        try (Directory train = FSDirectory.open(Paths.get(INDEX + "/train"));
+             Directory test = FSDirectory.open(Paths.get(INDEX + "/test"));
+             IndexReader reader = DirectoryReader.open(train);
+             IndexReader testReader = DirectoryReader.open(test)) {
+            List<String> texts = readTexts(testReader);
+            List<String> categories = readCategories(testReader);
+            try (MinHashClassifier classifier = new MinHashClassifier.Builder(10, 1, 100).lsh(20, 5)
+                    .build(reader, BODY_FIELD, CATEGORY_FIELD)) {
+                long[] latencies = classify(classifier, texts, 1);
+                System.out.format("%s: %s, accuracy = %.4f%n", classifier, describe(latencies),
+                        accuracy(classifier, texts, categories));
+            }
+            for (int bits : new int[]{64, 128}) {
+                for (int maxDistance : new int[]{3, 7, 15}) {
+                    long start = System.nanoTime();
+                    try (SimHashClassifier classifier = new SimHashClassifier.Builder(10, bits)
+                            .maxDistance(maxDistance).build(reader, BODY_FIELD, CATEGORY_FIELD)) {
+                        long elapsed = System.nanoTime() - start;
+                        long[] latencies = classify(classifier, texts, 1);
+                        System.out.format("%s built in %dms: %s, accuracy = %.4f%n", classifier, elapsed / 1000000,
+                                describe(latencies), accuracy(classifier, texts, categories));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCondense() throws Exception {
+        try (Directory train = FSDirectory.open(Paths.get(INDEX + "/train"));
+             Directory test = FSDirectory.open(Paths.get(INDEX + "/test"));
+             IndexReader reader = DirectoryReader.open(train);
+             IndexReader testReader = DirectoryReader.open(test)) {
+            List<String> texts = readTexts(testReader);
+            List<String> categories = readCategories(testReader);
+            for (double threshold : new double[]{0, 0.9, 0.7, 0.5, 0.3}) {
+                MinHashClassifier.Builder builder = new MinHashClassifier.Builder(10, 1, 100);
+                if (threshold > 0) {
+                    builder.condense(threshold);
+                }
+                long start = System.nanoTime();
+                try (MinHashClassifier classifier = builder.build(reader, BODY_FIELD, CATEGORY_FIELD)) {
+                    long elapsed = System.nanoTime() - start;
+                    long[] latencies = classify(classifier, texts, 1);
+                    System.out.format("%s built in %dms: %s, accuracy = %.4f%n", classifier, elapsed / 1000000,
+                            describe(latencies), accuracy(classifier, texts, categories));
+                }
+            }
+        }
+    }
+
+    static double throughput(int docs, long start) {
+        return docs / ((System.nanoTime() - start) / 1e9);
+    }
+
+    static List<String> readTexts(IndexReader reader) throws Exception {
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < reader.maxDoc() && texts.size() < MAX_TEST_DOCS; i++) {
+            IndexableField field = reader.document(i).getField(BODY_FIELD);
+            if (field != null) {
+                texts.add(field.stringValue());
+            }
+        }
+        return texts;
+    }
+
+    static List<String> readCategories(IndexReader reader) throws Exception {
+        List<String> categories = new ArrayList<>();
+        for (int i = 0; i < reader.maxDoc() && categories.size() < MAX_TEST_DOCS; i++) {
+            if (reader.document(i).getField(BODY_FIELD) != null) {
+                categories.add(reader.document(i).get(CATEGORY_FIELD));
+            }
+        }
+        return categories;
+    }
+
+    static double accuracy(Classifier<BytesRef> classifier, List<String> texts, List<String> categories)
+            throws Exception {
+        int correct = 0;
+        for (int i = 0; i < texts.size(); i++) {
+            ClassificationResult<BytesRef> result = classifier.assignClass(texts.get(i));
+            if (result != null && result.getAssignedClass().utf8ToString().equals(categories.get(i))) {
+                correct++;
+            }
+        }
+        return correct / (double) texts.size();
+    }
+
+    /**
+     * classifies all the given texts using the given number of threads, returning the latency (in nanoseconds) of each
+     * call
+     */
+    private static long[] classify(Classifier<BytesRef> classifier, List<String> texts, int threads) throws Exception {
+        long[] latencies = new long[texts.size()];
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService service = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new LinkedList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(service.submit(() -> {
+                    for (int i = next.getAndIncrement(); i < latencies.length; i = next.getAndIncrement()) {
+                        long start = System.nanoTime();
+                        classifier.assignClass(texts.get(i));
+                        latencies[i] = System.nanoTime() - start;
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            service.shutdown();
+        }
+        return latencies;
+    }
+
+    static String describe(long[] latencies) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        double total = 0;
+        for (long latency : sorted) {
+            total += latency;
+        }
+        return "avg = " + (total / sorted.length / 1e6) + "ms" +
+                ", p50 = " + (sorted[sorted.length / 2] / 1e6) + "ms" +
+                ", p99 = " + (sorted[(int) (sorted.length * 0.99)] / 1e6) + "ms";
+    }
+}
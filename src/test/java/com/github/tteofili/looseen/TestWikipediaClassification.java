@@ -147,6 +147,7 @@ public final class TestWikipediaClassification extends LuceneTestCase {
         }
 
         IndexReader reader = null;
+        MinHashSidecar sidecar = null;
         try {
             Collection<String> stopWordsList = Arrays.asList("di", "a", "da", "in", "per", "tra", "fra", "il", "lo", "la", "i", "gli", "le");
             CharArraySet stopWords = new CharArraySet(stopWordsList, true);
@@ -205,12 +206,14 @@ public final class TestWikipediaClassification extends LuceneTestCase {
             classifiers.add(new KNearestNeighborClassifier(reader, new DFRSimilarity(new BasicModelP(), new AfterEffectL(), new NormalizationH3()), analyzer, null, 3, 1, 1, CATEGORY_FIELD, TEXT_FIELD));
             classifiers.add(new KNearestNeighborClassifier(reader, new IBSimilarity(new DistributionSPL(), new LambdaDF(), new Normalization.NoNormalization()), analyzer, null, 3, 1, 1, CATEGORY_FIELD, TEXT_FIELD));
             classifiers.add(new KNearestNeighborClassifier(reader, new IBSimilarity(new DistributionLL(), new LambdaTTF(), new NormalizationH1()), analyzer, null, 3, 1, 1, CATEGORY_FIELD, TEXT_FIELD));
-            classifiers.add(new MinHashClassifier(reader, TEXT_FIELD, CATEGORY_FIELD, 5, 1, 100));
-            classifiers.add(new MinHashClassifier(reader, TEXT_FIELD, CATEGORY_FIELD, 10, 1, 100));
-            classifiers.add(new MinHashClassifier(reader, TEXT_FIELD, CATEGORY_FIELD, 15, 1, 100));
-            classifiers.add(new MinHashClassifier(reader, TEXT_FIELD, CATEGORY_FIELD, 15, 3, 100));
-            classifiers.add(new MinHashClassifier(reader, TEXT_FIELD, CATEGORY_FIELD, 15, 3, 300));
-            classifiers.add(new MinHashClassifier(reader, TEXT_FIELD, CATEGORY_FIELD, 5, 3, 100));
+            sidecar = new MinHashSidecar.Builder().add(5, 1, 100).add(10, 1, 100).add(15, 1, 100).add(15, 3, 100)
+                    .add(15, 3, 300).add(5, 3, 100).build(reader, TEXT_FIELD, CATEGORY_FIELD);
+            classifiers.add(sidecar.classifier(5, 1, 100));
+            classifiers.add(sidecar.classifier(10, 1, 100));
+            classifiers.add(sidecar.classifier(15, 1, 100));
+            classifiers.add(sidecar.classifier(15, 3, 100));
+            classifiers.add(sidecar.classifier(15, 3, 300));
+            classifiers.add(sidecar.classifier(5, 3, 100));
             classifiers.add(new KNearestFuzzyClassifier(reader, new ClassicSimilarity(), analyzer, null, 3, CATEGORY_FIELD, TEXT_FIELD));
             classifiers.add(new KNearestFuzzyClassifier(reader, new ClassicSimilarity(), analyzer, null, 1, CATEGORY_FIELD, TEXT_FIELD));
             classifiers.add(new KNearestFuzzyClassifier(reader, new BM25Similarity(), analyzer, null, 3, CATEGORY_FIELD, TEXT_FIELD));
@@ -283,6 +286,9 @@ public final class TestWikipediaClassification extends LuceneTestCase {
                 if (testReader != null) {
                     testReader.close();
                 }
+                if (sidecar != null) {
+                    sidecar.close();
+                }
             } catch (Throwable e) {
                 e.printStackTrace();
             }
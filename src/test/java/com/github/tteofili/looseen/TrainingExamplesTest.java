@@ -0,0 +1,79 @@
+package com.github.tteofili.looseen;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.lucene.util.LuceneTestCase;
+import org.junit.Test;
+
+/**
+ * Tests for {@link TrainingExamples}
+ */
+public class TrainingExamplesTest extends LuceneTestCase {
+
+    @Test
+    public void testFromIterator() throws Exception {
+        List<Map.Entry<String, String>> examples = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            examples.add(new AbstractMap.SimpleEntry<>("text " + i, "label " + (i % 3)));
+        }
+        Map<String, String> visited = new ConcurrentHashMap<>();
+        TrainingExamples.fromIterator(examples.iterator()).visit(4, (id, text, label) -> {
+            assertNull(visited.put(id, text));
+            assertEquals("label " + (Integer.parseInt(id) % 3), label);
+        });
+        assertEquals(examples.size(), visited.size());
+        for (int i = 0; i < examples.size(); i++) {
+            assertEquals("text " + i, visited.get(String.valueOf(i)));
+        }
+    }
+
+    @Test
+    public void testCondense() throws Exception {
+        String fox = "the quick brown fox jumps over the lazy dog near the old river bank";
+        String lorem = "lorem ipsum dolor sit amet consectetur adipiscing elit sed do eiusmod";
+        List<Map.Entry<String, String>> examples = Arrays.asList(new AbstractMap.SimpleEntry<>(fox, "a"),
+                new AbstractMap.SimpleEntry<>(fox, "a"), new AbstractMap.SimpleEntry<>(fox, "b"),
+                new AbstractMap.SimpleEntry<>(lorem, "a"), new AbstractMap.SimpleEntry<>("single", "a"));
+        List<String> visited = new ArrayList<>();
+        try (MinHashSignatureGenerator generator = new MinHashSignatureGenerator(2, 1, 64)) {
+            TrainingExamples.CondensedExamples condensed = TrainingExamples.condense(
+                    TrainingExamples.fromIterator(examples.iterator()), generator, 0.8);
+            // counts are unknown until the examples are visited
+            assertEquals(-1, condensed.getVisited());
+            assertEquals(-1, condensed.getKept());
+            assertEquals("unknown", condensed.toString());
+            condensed.visit(1, (id, text, label) -> visited.add(id));
+            // the duplicate of the same class is dropped, the one of another class is kept as a boundary
+            assertEquals(Arrays.asList("0", "2", "3", "4"), visited);
+            assertEquals(5, condensed.getVisited());
+            assertEquals(4, condensed.getKept());
+        }
+    }
+
+    @Test
+    public void testVisitorFailure() throws Exception {
+        Iterator<Map.Entry<String, String>> examples = new Iterator<Map.Entry<String, String>>() {
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public Map.Entry<String, String> next() {
+                return new AbstractMap.SimpleEntry<>("text", "label");
+            }
+        };
+        // the endless iterator is held back by the full queue until the failure of the visitor is noticed
+        RuntimeException e = expectThrows(RuntimeException.class, () -> TrainingExamples.fromIterator(examples)
+                .visit(2, (id, text, label) -> {
+                    throw new IllegalStateException();
+                }));
+        assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+}
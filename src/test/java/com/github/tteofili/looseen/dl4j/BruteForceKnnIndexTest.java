@@ -0,0 +1,74 @@
+package com.github.tteofili.looseen.dl4j;
+
+import java.util.Arrays;
+
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.util.LuceneTestCase;
+import org.junit.Test;
+
+/**
+ * Tests for {@link BruteForceKnnIndex}
+ */
+public class BruteForceKnnIndexTest extends LuceneTestCase {
+
+  @Test
+  public void testSearch() throws Exception {
+    int dimensions = 8;
+    float[][] vectors = new float[2500 + random().nextInt(1000)][];
+    try (BruteForceKnnIndex index = new BruteForceKnnIndex(dimensions, 3)) {
+      for (int i = 0; i < vectors.length; i++) {
+        vectors[i] = randomVector(dimensions);
+        assertEquals(i, index.add(vectors[i], i % 3));
+      }
+      assertEquals(vectors.length, index.size());
+      assertFalse(index.supportsConcurrentAdds());
+
+      float[][] queries = new float[5][];
+      for (int q = 0; q < queries.length; q++) {
+        queries[q] = randomVector(dimensions);
+      }
+      ScoreDoc[][] batch = index.search(queries, 10);
+      for (int q = 0; q < queries.length; q++) {
+        ScoreDoc[] hits = index.search(queries[q], 10);
+        assertEquals(10, hits.length);
+        assertEquals(Arrays.toString(hits), Arrays.toString(batch[q]));
+        // the best hit is the most similar vector overall
+        int best = -1;
+        double bestCosine = -2;
+        for (int i = 0; i < vectors.length; i++) {
+          double cosine = cosine(queries[q], vectors[i]);
+          if (cosine > bestCosine) {
+            best = i;
+            bestCosine = cosine;
+          }
+        }
+        assertEquals(best, hits[0].doc);
+        assertEquals((1 + bestCosine) / 2, hits[0].score, 1e-5);
+        assertEquals(best % 3, index.classes(hits)[0]);
+        for (int h = 1; h < hits.length; h++) {
+          assertTrue(hits[h - 1].score >= hits[h].score);
+        }
+      }
+    }
+  }
+
+  private static double cosine(float[] a, float[] b) {
+    double dot = 0;
+    double normA = 0;
+    double normB = 0;
+    for (int i = 0; i < a.length; i++) {
+      dot += a[i] * b[i];
+      normA += a[i] * a[i];
+      normB += b[i] * b[i];
+    }
+    return dot / Math.sqrt(normA * normB);
+  }
+
+  private static float[] randomVector(int dimensions) {
+    float[] vector = new float[dimensions];
+    for (int i = 0; i < dimensions; i++) {
+      vector[i] = (float) random().nextGaussian();
+    }
+    return vector;
+  }
+}
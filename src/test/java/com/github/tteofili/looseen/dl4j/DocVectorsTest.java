@@ -0,0 +1,32 @@
+package com.github.tteofili.looseen.dl4j;
+
+import java.nio.file.Path;
+
+import org.apache.lucene.util.LuceneTestCase;
+import org.junit.Test;
+
+/**
+ * Tests for {@link DocVectors}
+ */
+public class DocVectorsTest extends LuceneTestCase {
+
+  @Test
+  public void testWriteAndOpen() throws Exception {
+    Path file = createTempDir().resolve("vectors.bin");
+    assertNull(DocVectors.open(file, "fingerprint"));
+
+    float[][] vectors = {{1f, -2f, 3f}, null, {0.5f, 0f, -0.25f}};
+    DocVectors.write(file, "fingerprint", vectors.length, 3, docId -> vectors[docId]);
+
+    DocVectors docVectors = DocVectors.open(file, "fingerprint");
+    assertNotNull(docVectors);
+    assertEquals(3, docVectors.maxDoc());
+    assertEquals(3, docVectors.dimensions());
+    assertArrayEquals(vectors[0], docVectors.vector(0), 0f);
+    assertNull(docVectors.vector(1));
+    assertArrayEquals(vectors[2], docVectors.vector(2), 0f);
+
+    // vectors learned from different training examples are stale
+    assertNull(DocVectors.open(file, "other fingerprint"));
+  }
+}
@@ -0,0 +1,156 @@
+package com.github.tteofili.looseen.dl4j;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.util.LuceneTestCase;
+import org.junit.Test;
+
+/**
+ * Tests for {@link HnswIndex}
+ */
+public class HnswIndexTest extends LuceneTestCase {
+
+  private static final int DIMENSIONS = 16;
+
+  @Test
+  public void testSearch() throws Exception {
+    float[][] vectors = randomVectors(2000 + random().nextInt(1000));
+    try (HnswIndex index = new HnswIndex(DIMENSIONS, 8, 64, 64, random().nextLong());
+         BruteForceKnnIndex exact = new BruteForceKnnIndex(DIMENSIONS, 1)) {
+      assertEquals(0, index.search(vectors[0], 10).length);
+      for (int i = 0; i < vectors.length; i++) {
+        assertEquals(i, index.add(vectors[i], i % 3));
+        exact.add(vectors[i], i % 3);
+      }
+      assertEquals(vectors.length, index.size());
+
+      // an added vector is its own nearest neighbour
+      ScoreDoc[] hits = index.search(vectors[42], 10);
+      assertEquals(10, hits.length);
+      assertEquals(42, hits[0].doc);
+      assertEquals(1f, hits[0].score, 1e-5);
+      assertEquals(0, index.classes(hits)[0]);
+      for (int h = 1; h < hits.length; h++) {
+        assertTrue(hits[h - 1].score >= hits[h].score);
+      }
+
+      float[][] queries = randomVectors(20);
+      assertTrue(recall(index, exact, queries) >= 0.9);
+    }
+  }
+
+  @Test
+  public void testConcurrentAdds() throws Exception {
+    float[][] vectors = randomVectors(2000);
+    int[] ids = new int[vectors.length];
+    try (HnswIndex index = new HnswIndex(DIMENSIONS, 8, 64, 64, random().nextLong());
+         BruteForceKnnIndex exact = new BruteForceKnnIndex(DIMENSIONS, 1)) {
+      ExecutorService executor = Executors.newFixedThreadPool(4);
+      try {
+        AtomicInteger next = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+          futures.add(executor.submit(() -> {
+            for (int i = next.getAndIncrement(); i < vectors.length; i = next.getAndIncrement()) {
+              ids[i] = index.add(vectors[i], i % 3);
+            }
+            return null;
+          }));
+        }
+        for (Future<?> future : futures) {
+          future.get();
+        }
+      } finally {
+        executor.shutdown();
+      }
+      assertEquals(vectors.length, index.size());
+      assertTrue(index.supportsConcurrentAdds());
+      // ids are assigned in insertion order, the exact index gets the vectors in the same order
+      float[][] byId = new float[vectors.length][];
+      for (int i = 0; i < vectors.length; i++) {
+        byId[ids[i]] = vectors[i];
+        assertEquals(i % 3, index.classes(new ScoreDoc[]{new ScoreDoc(ids[i], 0)})[0]);
+      }
+      for (float[] vector : byId) {
+        exact.add(vector, 0);
+      }
+      assertTrue(recall(index, exact, randomVectors(20)) >= 0.9);
+    }
+  }
+
+  @Test
+  public void testWriteAndOpen() throws Exception {
+    Path file = createTempDir().resolve("hnsw.bin");
+    assertNull(HnswIndex.open(file, "fingerprint", 64));
+
+    float[][] vectors = randomVectors(500);
+    String[] labels = {"a", "b", "c"};
+    try (HnswIndex index = new HnswIndex(DIMENSIONS, 4, 32, 64, random().nextLong())) {
+      for (int i = 0; i < vectors.length; i++) {
+        index.add(vectors[i], i % 3);
+      }
+      index.write(file, "fingerprint", labels);
+
+      try (HnswIndex opened = HnswIndex.open(file, "fingerprint", 64)) {
+        assertNotNull(opened);
+        assertEquals(vectors.length, opened.size());
+        assertArrayEquals(labels, opened.labels());
+        for (float[] query : randomVectors(10)) {
+          ScoreDoc[] hits = index.search(query, 5);
+          ScoreDoc[] openedHits = opened.search(query, 5);
+          assertEquals(Arrays.toString(hits), Arrays.toString(openedHits));
+          assertArrayEquals(index.classes(hits), opened.classes(openedHits));
+        }
+
+        // the first add copies the graph on heap, the seed is kept so both graphs grow the same
+        for (float[] vector : randomVectors(50)) {
+          assertEquals(index.add(vector, 1), opened.add(vector, 1));
+          assertEquals(index.size() - 1, opened.search(vector, 1)[0].doc);
+        }
+        assertEquals(index.size(), opened.size());
+        for (float[] query : randomVectors(10)) {
+          assertEquals(Arrays.toString(index.search(query, 5)), Arrays.toString(opened.search(query, 5)));
+        }
+      }
+    }
+
+    // graphs of different vectors are stale
+    assertNull(HnswIndex.open(file, "other fingerprint", 64));
+  }
+
+  private static double recall(HnswIndex index, BruteForceKnnIndex exact, float[][] queries) {
+    int found = 0;
+    for (float[] query : queries) {
+      Set<Integer> expected = new HashSet<>();
+      for (ScoreDoc hit : exact.search(query, 10)) {
+        expected.add(hit.doc);
+      }
+      for (ScoreDoc hit : index.search(query, 10)) {
+        if (expected.contains(hit.doc)) {
+          found++;
+        }
+      }
+    }
+    return found / (10d * queries.length);
+  }
+
+  private static float[][] randomVectors(int count) {
+    float[][] vectors = new float[count][DIMENSIONS];
+    for (float[] vector : vectors) {
+      for (int i = 0; i < DIMENSIONS; i++) {
+        vector[i] = (float) random().nextGaussian();
+      }
+    }
+    return vectors;
+  }
+}
@@ -0,0 +1,173 @@
+package com.github.tteofili.looseen.dl4j;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import com.carrotsearch.randomizedtesting.annotations.TimeoutSuite;
+import com.github.tteofili.looseen.RandomHyperplaneLSHIndex;
+import com.github.tteofili.looseen.VectorIndex;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.TimeUnits;
+import org.junit.Test;
+
+/**
+ * latency and recall measurements of {@link VectorIndex}es on random clustered vectors, using
+ * {@link BruteForceKnnIndex} as the ground truth; the {@link HnswIndex} is measured across a range of efSearch
+ * values, to draw its recall vs latency curve
+ */
+@LuceneTestCase.SuppressSysoutChecks(bugUrl = "none")
+@TimeoutSuite(millis = 365 * 24 * TimeUnits.HOUR)
+@LuceneTestCase.Monster("takes a lot!")
+public final class TestVectorIndexPerformance extends LuceneTestCase {
+
+  private static final int DIMENSIONS = 60;
+  private static final int DOCS = 1000000;
+  private static final int QUERIES = 1000;
+  private static final int K = 10;
+
+  @Test
+  public void testExactSearch() throws Exception {
+    float[][] vectors = clusteredVectors(DOCS, new Random(42));
+    float[][] queries = clusteredVectors(QUERIES, new Random(43));
+    for (int threads : new int[]{1, 4, 8}) {
+      try (BruteForceKnnIndex index = new BruteForceKnnIndex(DIMENSIONS, threads)) {
+        add(index, vectors);
+        long start = System.nanoTime();
+        for (float[] query : queries) {
+          index.search(query, K);
+        }
+        System.out.format("%s single queries: %.2f queries/sec%n", index, throughput(start));
+        for (int batchSize : new int[]{8, 64}) {
+          start = System.nanoTime();
+          for (int i = 0; i < queries.length; i += batchSize) {
+            float[][] batch = new float[Math.min(batchSize, queries.length - i)][];
+            System.arraycopy(queries, i, batch, 0, batch.length);
+            index.search(batch, K);
+          }
+          System.out.format("%s batches of %d: %.2f queries/sec%n", index, batchSize, throughput(start));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testRandomHyperplaneRecall() throws Exception {
+    float[][] vectors = clusteredVectors(DOCS, new Random(42));
+    float[][] queries = clusteredVectors(QUERIES, new Random(43));
+    ScoreDoc[][] truth;
+    try (BruteForceKnnIndex exact = new BruteForceKnnIndex(DIMENSIONS, Runtime.getRuntime().availableProcessors())) {
+      add(exact, vectors);
+      truth = exact.search(queries, K);
+    }
+    for (int[] parameters : new int[][]{{4, 16}, {8, 16}, {8, 12}, {16, 12}}) {
+      try (VectorIndex index = new RandomHyperplaneLSHIndex(DIMENSIONS, parameters[0], parameters[1], 42)) {
+        add(index, vectors);
+        measure(index, queries, truth);
+      }
+    }
+  }
+
+  @Test
+  public void testHnswRecall() throws Exception {
+    float[][] vectors = clusteredVectors(DOCS, new Random(42));
+    float[][] queries = clusteredVectors(QUERIES, new Random(43));
+    ScoreDoc[][] truth;
+    try (BruteForceKnnIndex exact = new BruteForceKnnIndex(DIMENSIONS, Runtime.getRuntime().availableProcessors())) {
+      add(exact, vectors);
+      truth = exact.search(queries, K);
+    }
+    for (int m : new int[]{8, 16}) {
+      try (HnswIndex index = new HnswIndex(DIMENSIONS, m, 100, 10, 42)) {
+        add(index, vectors);
+        for (int ef : new int[]{10, 20, 40, 80, 160, 320}) {
+          long start = System.nanoTime();
+          ScoreDoc[][] hits = new ScoreDoc[queries.length][];
+          for (int q = 0; q < queries.length; q++) {
+            hits[q] = index.search(queries[q], K, ef);
+          }
+          System.out.format("%s efSearch=%d: %.2f queries/sec, recall@%d = %.4f%n", index, ef, throughput(start), K,
+              recall(hits, truth));
+        }
+      }
+    }
+  }
+
+  static void measure(VectorIndex index, float[][] queries, ScoreDoc[][] truth) {
+    long start = System.nanoTime();
+    ScoreDoc[][] hits = new ScoreDoc[queries.length][];
+    for (int q = 0; q < queries.length; q++) {
+      hits[q] = index.search(queries[q], K);
+    }
+    System.out.format("%s: %.2f queries/sec, recall@%d = %.4f%n", index, throughput(start), K, recall(hits, truth));
+  }
+
+  static double recall(ScoreDoc[][] hits, ScoreDoc[][] truth) {
+    int found = 0;
+    int total = 0;
+    for (int q = 0; q < truth.length; q++) {
+      Set<Integer> expected = new HashSet<>();
+      for (ScoreDoc hit : truth[q]) {
+        expected.add(hit.doc);
+      }
+      for (ScoreDoc hit : hits[q]) {
+        if (expected.contains(hit.doc)) {
+          found++;
+        }
+      }
+      total += expected.size();
+    }
+    return found / (double) total;
+  }
+
+  static void add(VectorIndex index, float[][] vectors) {
+    long start = System.nanoTime();
+    for (int i = 0; i < vectors.length; i++) {
+      index.add(vectors[i], i % 20);
+    }
+    System.out.format("%s built in %dms%n", index, (System.nanoTime() - start) / 1000000);
+  }
+
+  /**
+   * random vectors around 20 random centroids, which is roughly how paragraph vectors of 20 classes look like
+   */
+  static float[][] clusteredVectors(int count, Random random) {
+    Random centroidsRandom = new Random(0);
+    float[][] centroids = new float[20][DIMENSIONS];
+    for (float[] centroid : centroids) {
+      for (int i = 0; i < DIMENSIONS; i++) {
+        centroid[i] = (float) centroidsRandom.nextGaussian();
+      }
+    }
+    float[][] vectors = new float[count][DIMENSIONS];
+    for (int v = 0; v < count; v++) {
+      float[] centroid = centroids[random.nextInt(centroids.length)];
+      for (int i = 0; i < DIMENSIONS; i++) {
+        vectors[v][i] = centroid[i] + (float) random.nextGaussian() * 0.5f;
+      }
+    }
+    return vectors;
+  }
+
+  static double throughput(long start) {
+    return QUERIES / ((System.nanoTime() - start) / 1e9);
+  }
+}